@@ -0,0 +1,181 @@
+package com.andreas.personalcloudclient;
+
+import android.content.Context;
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs ChunkedUploader against a stand-in session server that drops a connection mid-chunk,
+ * and checks that the upload resumes at the offset the server stored.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ChunkedUploaderTest {
+
+    private static final int CHUNK_SIZE = 1000;
+    private static final int FILE_SIZE = 3500;
+
+    private MockWebServer server;
+    private ApiService apiService;
+    private Context context;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        file = new File(context.getCacheDir(), "chunked_upload_test.bin");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            byte[] content = new byte[FILE_SIZE];
+            for (int i = 0; i < content.length; i++) {
+                content[i] = (byte) i;
+            }
+            out.write(content);
+        }
+
+        server = new MockWebServer();
+        server.start();
+        // OkHttp must not retry the dropped request by itself; recovering is the uploader's job.
+        OkHttpClient client = new OkHttpClient.Builder().retryOnConnectionFailure(false).build();
+        apiService = new Retrofit.Builder()
+            .baseUrl(server.url("/"))
+            .client(client)
+            .addConverterFactory(GsonConverterFactory.create())
+            .build()
+            .create(ApiService.class);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+        file.delete();
+    }
+
+    @Test
+    public void resumesAtServerOffsetAfterConnectionDropsMidChunk() throws IOException {
+        SessionServer sessionServer = new SessionServer();
+        sessionServer.dropChunkAt = CHUNK_SIZE;
+        server.setDispatcher(sessionServer);
+
+        new ChunkedUploader(context, apiService, 1).upload(Uri.fromFile(file), "test.bin", FILE_SIZE,
+            null, new NoOpSessionListener(), null);
+
+        // Every chunk arrived completely exactly once; the dropped one was sent again from its own offset.
+        assertEquals(FILE_SIZE, sessionServer.storedOffset);
+        assertEquals(Arrays.asList(0L, 1000L, 2000L, 3000L), sessionServer.completedChunkOffsets);
+        assertTrue(sessionServer.committed);
+        // Bytes re-sent because of the interruption: at most the chunk that was in flight.
+        long resent = sessionServer.bytesReceived - FILE_SIZE + sessionServer.droppedChunkLength;
+        assertTrue("re-sent " + resent + " bytes", resent <= CHUNK_SIZE);
+    }
+
+    @Test
+    public void givesUpWhenServerAnswersConflictForever() {
+        SessionServer sessionServer = new SessionServer();
+        sessionServer.alwaysConflict = true;
+        server.setDispatcher(sessionServer);
+
+        try {
+            new ChunkedUploader(context, apiService, 1).upload(Uri.fromFile(file), "test.bin", FILE_SIZE,
+                null, new NoOpSessionListener(), null);
+            fail("Expected the upload to fail");
+        } catch (IOException expected) {
+            // Bounded by MAX_ATTEMPTS_PER_CHUNK instead of looping forever.
+        }
+        assertEquals(5, sessionServer.chunkRequests);
+        assertFalse(sessionServer.committed);
+    }
+
+    // A minimal upload session server: one session, chunks must start at the stored offset.
+    private static class SessionServer extends Dispatcher {
+        long dropChunkAt = -1;
+        boolean alwaysConflict;
+
+        volatile long storedOffset;
+        volatile long bytesReceived;
+        volatile long droppedChunkLength;
+        volatile int chunkRequests;
+        volatile boolean committed;
+        final List<Long> completedChunkOffsets = Collections.synchronizedList(new ArrayList<>());
+
+        // Consulted before a request body is read; only the chunk to drop gets a disconnect.
+        @NonNull
+        @Override
+        public MockResponse peek() {
+            if (dropChunkAt >= 0 && storedOffset == dropChunkAt) {
+                dropChunkAt = -1;
+                droppedChunkLength = Math.min(CHUNK_SIZE, FILE_SIZE - storedOffset);
+                return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_DURING_REQUEST_BODY);
+            }
+            return super.peek();
+        }
+
+        @NonNull
+        @Override
+        public MockResponse dispatch(@NonNull RecordedRequest request) {
+            String path = request.getPath();
+            String method = request.getMethod();
+            if ("POST".equals(method) && "/uploads".equals(path)) {
+                return session();
+            }
+            if ("GET".equals(method) && "/uploads/u1".equals(path)) {
+                return session();
+            }
+            if ("PUT".equals(method) && "/uploads/u1".equals(path)) {
+                chunkRequests++;
+                long offset = Long.parseLong(request.getHeader("Upload-Offset"));
+                if (alwaysConflict || offset != storedOffset) {
+                    return new MockResponse().setResponseCode(409);
+                }
+                long length = request.getBodySize();
+                bytesReceived += length;
+                storedOffset += length;
+                completedChunkOffsets.add(offset);
+                return session();
+            }
+            if ("POST".equals(method) && "/uploads/u1/commit".equals(path)) {
+                committed = true;
+                return new MockResponse().setBody("{\"message\": \"ok\", \"filename\": \"test.bin\"}");
+            }
+            return new MockResponse().setResponseCode(404);
+        }
+
+        private MockResponse session() {
+            return new MockResponse().setBody("{\"upload_id\": \"u1\", \"offset\": " + storedOffset
+                + ", \"size\": " + FILE_SIZE + ", \"chunk_size\": " + CHUNK_SIZE + "}");
+        }
+    }
+
+    private static class NoOpSessionListener implements ChunkedUploader.SessionListener {
+        @Override
+        public void onSessionCreated(String uploadId) {}
+
+        @Override
+        public void onChunkAcknowledged(String uploadId, long confirmedOffset, long totalBytes) {}
+    }
+}
@@ -0,0 +1,100 @@
+package com.andreas.personalcloudclient;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Arrays;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.tls.HandshakeCertificates;
+import okhttp3.tls.HeldCertificate;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures time-to-first-list against a local TLS stand-in for the home server: once from a
+ * cold client, and once after the HEAD request ConnectionWarmer sends at startup. Also checks
+ * that the client negotiates HTTP/2 and that the listing reuses the warmed connection.
+ * Rerun with "./gradlew connectedAndroidTest" and read the "WarmupBenchmark" log tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ConnectionWarmupBenchmarkTest {
+
+    private static final String TAG = "WarmupBenchmark";
+    private static final String LISTING = "[{\"filename\": \"a.jpg\", \"file_type\": \"image\", \"size\": 1, \"modified_at\": 0}]";
+
+    private MockWebServer server;
+    private HandshakeCertificates clientCertificates;
+
+    @Before
+    public void setUp() throws IOException {
+        String host = InetAddress.getByName("localhost").getCanonicalHostName();
+        HeldCertificate certificate = new HeldCertificate.Builder().addSubjectAlternativeName(host).build();
+        HandshakeCertificates serverCertificates = new HandshakeCertificates.Builder().heldCertificate(certificate).build();
+        clientCertificates = new HandshakeCertificates.Builder().addTrustedCertificate(certificate.certificate()).build();
+
+        server = new MockWebServer();
+        server.useHttps(serverCertificates.sslSocketFactory(), false);
+        server.setProtocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void firstListingReusesWarmedConnection() throws Exception {
+        // Each run gets its own client, so its pool starts empty like a cold app start.
+        long cold = timeFirstListing(newClient(), false);
+        long warm = timeFirstListing(newClient(), true);
+        Log.i(TAG, "Time to first list: cold " + cold / 1000 + " us, after warm-up " + warm / 1000 + " us");
+    }
+
+    private long timeFirstListing(OkHttpClient client, boolean warmUp) throws Exception {
+        if (warmUp) {
+            server.enqueue(new MockResponse());
+            // The request ConnectionWarmer sends while the splash screen checks the token.
+            try (Response response = client.newCall(new Request.Builder().url(server.url("/")).head().build()).execute()) {
+                assertEquals(Protocol.HTTP_2, response.protocol());
+            }
+            server.takeRequest();
+        }
+
+        server.enqueue(new MockResponse().setBody(LISTING));
+        long started = SystemClock.elapsedRealtimeNanos();
+        try (Response response = client.newCall(new Request.Builder().url(server.url("/files")).build()).execute()) {
+            response.body().string();
+            long elapsed = SystemClock.elapsedRealtimeNanos() - started;
+            assertEquals(Protocol.HTTP_2, response.protocol());
+            RecordedRequest request = server.takeRequest();
+            // The first request on a connection has sequence number 0.
+            assertEquals(warmUp ? 1 : 0, request.getSequenceNumber());
+            return elapsed;
+        }
+    }
+
+    // Configured like RetrofitClient's shared client, trusting the stand-in's certificate.
+    private OkHttpClient newClient() {
+        return new OkHttpClient.Builder()
+            .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+            .sslSocketFactory(clientCertificates.sslSocketFactory(), clientCertificates.trustManager())
+            .build();
+    }
+}
@@ -0,0 +1,127 @@
+package com.andreas.personalcloudclient;
+
+import android.database.Cursor;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.room.Room;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteStatement;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures what reading the listing costs as columnar FilePages compared with one FileMetadata
+ * per row. Rerun with "./gradlew connectedAndroidTest" and read the "FilePageBenchmark" log tag.
+ * Allocation counts come from ART and include other threads, so they are logged, not asserted.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FilePageBenchmarkTest {
+
+    private static final String TAG = "FilePageBenchmark";
+    private static final int ROWS = 100_000;
+    private static final String[] TYPES = {"image", "video", "document", "audio", null};
+
+    private AppDatabase db;
+
+    @Before
+    public void setUp() {
+        db = Room.inMemoryDatabaseBuilder(InstrumentationRegistry.getInstrumentation().getTargetContext(),
+            AppDatabase.class).addCallback(AppDatabase.CALLBACK).build();
+        SupportSQLiteDatabase sql = db.getOpenHelper().getWritableDatabase();
+        sql.beginTransaction();
+        try {
+            SupportSQLiteStatement insert = sql.compileStatement(
+                "INSERT INTO files (filename, file_type, size, modified_at) VALUES (?, ?, ?, ?)");
+            for (int i = 0; i < ROWS; i++) {
+                insert.bindString(1, String.format("IMG_%08d.jpg", i));
+                String type = TYPES[i % TYPES.length];
+                if (type == null) insert.bindNull(2); else insert.bindString(2, type);
+                insert.bindLong(3, i * 1024L);
+                insert.bindLong(4, 1700000000000L + i);
+                insert.executeInsert();
+            }
+            sql.setTransactionSuccessful();
+        } finally {
+            sql.endTransaction();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void readListingAsPagesAndAsObjects() {
+        // Warm up both paths once, so class loading and the SQLite page cache are not measured.
+        readPage();
+        readObjects();
+
+        long allocated = allocatedBytes();
+        long started = SystemClock.elapsedRealtimeNanos();
+        FilePage page = readPage();
+        long pageNanos = SystemClock.elapsedRealtimeNanos() - started;
+        long pageBytes = allocatedBytes() - allocated;
+
+        allocated = allocatedBytes();
+        started = SystemClock.elapsedRealtimeNanos();
+        List<FileMetadata> objects = readObjects();
+        long objectNanos = SystemClock.elapsedRealtimeNanos() - started;
+        long objectBytes = allocatedBytes() - allocated;
+
+        Log.i(TAG, ROWS + " rows as FilePage: " + pageNanos / 1_000_000 + " ms, " + pageBytes / 1024 + " KiB allocated");
+        Log.i(TAG, ROWS + " rows as FileMetadata: " + objectNanos / 1_000_000 + " ms, " + objectBytes / 1024 + " KiB allocated");
+
+        assertEquals(objects.size(), page.size());
+        for (int row = 0; row < ROWS; row += 997) {
+            FileMetadata file = objects.get(row);
+            assertEquals(file.getFilename(), page.getFilename(row));
+            assertEquals(file.getFileType(), page.getFileType(row));
+            assertEquals(file.getSize(), page.getSize(row));
+            assertEquals(file.getModifiedAt(), page.getModifiedAt(row));
+            assertTrue(page.hasSameContent(row, FilePage.of(objects.subList(row, row + 1)), 0));
+        }
+    }
+
+    private FilePage readPage() {
+        try (Cursor cursor = db.query(FileQuery.DEFAULT.pageAfter(null, ROWS))) {
+            return FilePage.read(cursor);
+        }
+    }
+
+    // What a List<FileMetadata> query does: one object, filename and type String per row.
+    private List<FileMetadata> readObjects() {
+        List<FileMetadata> files = new ArrayList<>();
+        try (Cursor cursor = db.query(FileQuery.DEFAULT.pageAfter(null, ROWS))) {
+            int filename = cursor.getColumnIndexOrThrow("filename");
+            int fileType = cursor.getColumnIndexOrThrow("file_type");
+            int size = cursor.getColumnIndexOrThrow("size");
+            int modifiedAt = cursor.getColumnIndexOrThrow("modified_at");
+            while (cursor.moveToNext()) {
+                FileMetadata file = new FileMetadata();
+                file.setFilename(cursor.getString(filename));
+                file.setFileType(cursor.isNull(fileType) ? null : cursor.getString(fileType));
+                file.setSize(cursor.getLong(size));
+                file.setModifiedAt(cursor.getLong(modifiedAt));
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    private static long allocatedBytes() {
+        return Long.parseLong(Debug.getRuntimeStat("art.gc.bytes-allocated"));
+    }
+}
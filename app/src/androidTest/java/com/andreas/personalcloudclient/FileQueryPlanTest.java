@@ -0,0 +1,121 @@
+package com.andreas.personalcloudclient;
+
+import android.database.Cursor;
+
+import androidx.room.Room;
+import androidx.sqlite.db.SupportSQLiteProgram;
+import androidx.sqlite.db.SupportSQLiteQuery;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Asks SQLite how it runs the queries of every FileQuery view, filtered and unfiltered.
+ * Each one must walk an index and none may sort rows in a temp B-tree; the total must come
+ * from the per-type counts instead of the files table.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FileQueryPlanTest {
+
+    private AppDatabase db;
+
+    @Before
+    public void setUp() {
+        db = Room.inMemoryDatabaseBuilder(InstrumentationRegistry.getInstrumentation().getTargetContext(),
+            AppDatabase.class).addCallback(AppDatabase.CALLBACK).build();
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void everyViewReadsAnIndexInOrder() {
+        FileMetadata row = new FileMetadata();
+        row.setFilename("holiday.jpg");
+        row.setFileType("image");
+        row.setSize(1024);
+        row.setModifiedAt(1700000000000L);
+
+        for (FileQuery.Sort sort : FileQuery.Sort.values()) {
+            for (String fileType : new String[] {null, "image"}) {
+                FileQuery query = FileQuery.DEFAULT.withSort(sort).withFileType(fileType);
+                String view = sort + (fileType != null ? " of " + fileType : "");
+                assertUsesIndex(view + ": first page", query.pageAfter(null, 50));
+                assertUsesIndex(view + ": next page", query.pageAfter(row, 50));
+                assertUsesIndex(view + ": page from a row", query.pageFrom(row, 50));
+                assertUsesIndex(view + ": page before a row", query.pageBefore(row, 50));
+                assertUsesIndex(view + ": page at offset", query.pageAt(100, 50));
+                assertUsesIndex(view + ": count before", query.countBefore(row));
+                assertReadsCounts(view + ": count", query.count());
+            }
+        }
+    }
+
+    private void assertUsesIndex(String what, SupportSQLiteQuery query) {
+        List<String> plan = explain(query);
+        assertFalse(what + " has no plan", plan.isEmpty());
+        for (String step : plan) {
+            assertFalse(what + " sorts: " + plan, step.contains("USE TEMP B-TREE FOR ORDER BY"));
+            if (step.startsWith("SCAN") || step.startsWith("SEARCH")) {
+                assertTrue(what + " reads the table: " + plan,
+                    step.contains("USING INDEX") || step.contains("USING COVERING INDEX"));
+            }
+        }
+    }
+
+    // The total comes from the per-type counts; it must never count the files table.
+    private void assertReadsCounts(String what, SupportSQLiteQuery query) {
+        List<String> plan = explain(query);
+        assertFalse(what + " has no plan", plan.isEmpty());
+        for (String step : plan) {
+            assertTrue(what + " reads files: " + plan, step.contains("file_type_counts"));
+        }
+    }
+
+    // The "detail" column of EXPLAIN QUERY PLAN, one entry per step.
+    private List<String> explain(SupportSQLiteQuery query) {
+        List<String> plan = new ArrayList<>();
+        try (Cursor cursor = db.query(new ExplainQuery(query))) {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.add(cursor.getString(detail));
+            }
+        }
+        return plan;
+    }
+
+    // Prefixes a query with EXPLAIN QUERY PLAN and keeps its bound arguments.
+    private static class ExplainQuery implements SupportSQLiteQuery {
+        private final SupportSQLiteQuery query;
+
+        ExplainQuery(SupportSQLiteQuery query) {
+            this.query = query;
+        }
+
+        @Override
+        public String getSql() {
+            return "EXPLAIN QUERY PLAN " + query.getSql();
+        }
+
+        @Override
+        public void bindTo(SupportSQLiteProgram statement) {
+            query.bindTo(statement);
+        }
+
+        @Override
+        public int getArgCount() {
+            return query.getArgCount();
+        }
+    }
+}
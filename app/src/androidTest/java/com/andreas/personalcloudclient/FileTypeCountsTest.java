@@ -0,0 +1,69 @@
+package com.andreas.personalcloudclient;
+
+import androidx.room.Room;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the trigger-maintained file_type_counts agree with counting the files table
+ * after inserts, upserts that change a file's type, and deletes.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FileTypeCountsTest {
+
+    private AppDatabase db;
+    private FileDao fileDao;
+
+    @Before
+    public void setUp() {
+        db = Room.inMemoryDatabaseBuilder(InstrumentationRegistry.getInstrumentation().getTargetContext(),
+            AppDatabase.class).addCallback(AppDatabase.CALLBACK).build();
+        fileDao = db.fileDao();
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void countsFollowEveryWrite() {
+        fileDao.upsertAll(Arrays.asList(file("a.jpg", "image"), file("b.jpg", "image"),
+            file("c.mp4", "video"), file("notes", null)));
+        assertCounts();
+
+        // An upsert of an existing row is an update, so it must not count the file twice.
+        fileDao.upsertAll(Arrays.asList(file("a.jpg", "image"), file("c.mp4", "image")));
+        assertCounts();
+        assertEquals(3, fileDao.count(FileQuery.DEFAULT.withFileType("image").count()));
+        assertEquals(0, fileDao.count(FileQuery.DEFAULT.withFileType("video").count()));
+
+        fileDao.deleteFileByFilename("b.jpg");
+        fileDao.deleteFilesByFilename(Collections.singletonList("notes"));
+        assertCounts();
+        assertEquals(2, fileDao.count(FileQuery.DEFAULT.count()));
+    }
+
+    private void assertCounts() {
+        assertEquals(fileDao.getCount(), fileDao.count(FileQuery.DEFAULT.count()));
+    }
+
+    private static FileMetadata file(String filename, String fileType) {
+        FileMetadata file = new FileMetadata();
+        file.setFilename(filename);
+        file.setFileType(fileType);
+        file.setSize(filename.length());
+        file.setModifiedAt(1700000000000L);
+        return file;
+    }
+}
@@ -0,0 +1,157 @@
+package com.andreas.personalcloudclient;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.room.Room;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.Okio;
+import okio.Source;
+import okio.Timeout;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures the reconcile of a full listing into Room: time and rows written for a first sync,
+ * an unchanged resync, and a resync where 1% of the files changed and 1% disappeared.
+ * The JSON is generated while it is read, so large listings never sit in memory.
+ * Rerun with "./gradlew connectedAndroidTest" and read the "IngestBenchmark" log tag. The sizes
+ * default to 10k and 100k rows; pass the instrumentation argument ingestBenchmarkRows, e.g.
+ * "-Pandroid.testInstrumentationRunnerArguments.ingestBenchmarkRows=10000,100000,500000".
+ */
+@RunWith(AndroidJUnit4.class)
+public class ListingIngestBenchmarkTest {
+
+    private static final String TAG = "IngestBenchmark";
+    private static final String DATABASE_NAME = "ingest_benchmark.db";
+
+    private Context context;
+    private AppDatabase db;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        if (db != null) db.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void reconcileFullListings() throws IOException {
+        String sizes = InstrumentationRegistry.getArguments().getString("ingestBenchmarkRows", "10000,100000");
+        for (String size : sizes.split(",")) {
+            measure(Integer.parseInt(size.trim()));
+        }
+    }
+
+    private void measure(int rows) throws IOException {
+        if (db != null) db.close();
+        context.deleteDatabase(DATABASE_NAME);
+        // On disk like the app's own database, so the write volume is real.
+        db = Room.databaseBuilder(context, AppDatabase.class, DATABASE_NAME).addCallback(AppDatabase.CALLBACK).build();
+        ListingIngester ingester = new ListingIngester(db);
+
+        ListingIngester.Result first = ingest(ingester, "first sync", rows, 0);
+        assertEquals(rows, first.count);
+        assertEquals(rows, first.rowsWritten);
+
+        ListingIngester.Result unchanged = ingest(ingester, "unchanged", rows, 0);
+        assertEquals(0, unchanged.rowsWritten);
+
+        // Every 100th file is gone and every 100th (shifted by 50) has a new size.
+        ListingIngester.Result changed = ingest(ingester, "1% changed, 1% gone", rows, 1);
+        assertEquals(rows - rows / 100, changed.count);
+        assertEquals(rows / 100 * 2, changed.rowsWritten);
+        assertEquals(rows - rows / 100, db.fileDao().getCount());
+    }
+
+    private ListingIngester.Result ingest(ListingIngester ingester, String what, int rows, int generation)
+            throws IOException {
+        long started = SystemClock.elapsedRealtime();
+        ListingIngester.Result result = ingester.ingest(new GeneratedListing(rows, generation), "",
+            (count, firstFilename) -> true, null);
+        long elapsed = SystemClock.elapsedRealtime() - started;
+        Log.i(TAG, rows + " rows, " + what + ": " + elapsed + " ms, " + result.rowsWritten + " rows written");
+        return result;
+    }
+
+    // A /files body of generated rows; generation 1 drops and changes 1% of them.
+    private static class GeneratedListing extends ResponseBody {
+        private final int rows;
+        private final int generation;
+
+        GeneratedListing(int rows, int generation) {
+            this.rows = rows;
+            this.generation = generation;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return MediaType.parse("application/json");
+        }
+
+        @Override
+        public long contentLength() {
+            return -1;
+        }
+
+        @NonNull
+        @Override
+        public BufferedSource source() {
+            return Okio.buffer(new Source() {
+                private int next = -1;
+
+                @Override
+                public long read(@NonNull Buffer sink, long byteCount) {
+                    if (next > rows) return -1;
+                    long before = sink.size();
+                    while (next <= rows && sink.size() - before < byteCount) {
+                        if (next == -1) {
+                            sink.writeUtf8("[");
+                        } else if (next == rows) {
+                            sink.writeUtf8("]");
+                        } else if (generation == 0 || next % 100 != 0) {
+                            long size = generation == 1 && next % 100 == 50 ? next + 1 : next;
+                            String row = "{\"filename\": \"file_" + String.format("%08d", next) + ".jpg\", "
+                                + "\"file_type\": \"image\", \"size\": " + size + ", "
+                                + "\"modified_at\": \"2024-01-01T00:00:00Z\"}";
+                            boolean firstRow = next == 0 || (generation == 1 && next == 1);
+                            sink.write((firstRow ? row : "," + row).getBytes(StandardCharsets.UTF_8));
+                        }
+                        next++;
+                    }
+                    return sink.size() - before;
+                }
+
+                @NonNull
+                @Override
+                public Timeout timeout() {
+                    return Timeout.NONE;
+                }
+
+                @Override
+                public void close() {}
+            });
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.andreas.personalcloudclient;
+
+import android.content.Context;
+
+import androidx.room.Room;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.google.gson.JsonParseException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the listing reaches ListingIngester as a stream through the client FileRepository
+ * fetches it with. The server drops the connection halfway through a large page: a client that
+ * reads the whole body first (e.g. to log it) fails before a single row is written, while a
+ * streaming client has already written the batches that arrived.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ListingStreamingTest {
+
+    private static final int ROWS = ListingIngester.BATCH_SIZE * 10;
+
+    private MockWebServer server;
+    private AppDatabase db;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        db = Room.inMemoryDatabaseBuilder(InstrumentationRegistry.getInstrumentation().getTargetContext(),
+            AppDatabase.class).addCallback(AppDatabase.CALLBACK).build();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        db.close();
+        server.shutdown();
+    }
+
+    @Test
+    public void truncatedPageIsIngestedUpToTheBreak() throws IOException {
+        StringBuilder listing = new StringBuilder("[");
+        for (int i = 0; i < ROWS; i++) {
+            if (i > 0) listing.append(',');
+            listing.append("{\"filename\": \"file_").append(String.format("%08d", i)).append(".jpg\", ")
+                .append("\"file_type\": \"image\", \"size\": ").append(i).append(", \"modified_at\": 0}");
+        }
+        listing.append(']');
+        // Sends the first half of the body, then closes the connection.
+        server.enqueue(new MockResponse().setBody(listing.toString())
+            .setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY));
+
+        // Against the stand-in server, but with the client FileRepository streams the listing through.
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        ApiService api = new Retrofit.Builder()
+            .baseUrl(server.url("/"))
+            .client(RetrofitClient.getTransferHttpClient(context))
+            .addConverterFactory(GsonConverterFactory.create())
+            .build()
+            .create(ApiService.class);
+
+        // A buffering client already fails here, reading the body that never completes.
+        Response<ResponseBody> response = api.getFiles(null, null, null, ROWS).execute();
+        assertTrue(response.isSuccessful());
+
+        int[] ingested = {0};
+        try {
+            new ListingIngester(db).ingest(response.body(), "", (count, firstFilename) -> true,
+                filesIngested -> ingested[0] = filesIngested);
+            fail("The page was cut off, so the ingest must fail");
+        } catch (IOException | JsonParseException expected) {
+            // The end of the body is missing; Gson wraps the read error if it hits mid-row.
+        }
+        assertTrue("No batch was written before the break", ingested[0] >= ListingIngester.BATCH_SIZE);
+        assertTrue(ingested[0] < ROWS);
+        assertEquals(ingested[0], db.fileDao().getCount());
+    }
+}
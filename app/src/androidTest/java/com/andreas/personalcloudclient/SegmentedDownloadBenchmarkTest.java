@@ -0,0 +1,150 @@
+package com.andreas.personalcloudclient;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import retrofit2.Retrofit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures a large download as one stream and in segmented mode against a local server that adds
+ * a round-trip delay to every response and caps each connection's rate, like a long fat link where
+ * one TCP stream cannot fill the pipe. Logs both times and how many connections the segmented
+ * download ended up using. Rerun with "./gradlew connectedAndroidTest" and read the
+ * "SegmentedBenchmark" log tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SegmentedDownloadBenchmarkTest {
+
+    private static final String TAG = "SegmentedBenchmark";
+    private static final int FILE_SIZE = 40 * 1024 * 1024;
+    private static final long ROUND_TRIP_MS = 100;
+    // About 2.5 MB/s per connection.
+    private static final long BYTES_PER_PERIOD = 64 * 1024;
+    private static final long PERIOD_MS = 25;
+    private static final String ETAG = "\"benchmark\"";
+
+    private final byte[] content = new byte[FILE_SIZE];
+    private final AtomicInteger connections = new AtomicInteger();
+    private MockWebServer server;
+    private ResumableDownloader downloader;
+    private File partialFile;
+
+    @Before
+    public void setUp() throws IOException {
+        for (int i = 0; i < FILE_SIZE; i++) {
+            content[i] = (byte) (i % 251);
+        }
+        server = new MockWebServer();
+        server.setDispatcher(new RangeDispatcher());
+        server.start();
+
+        ApiService api = new Retrofit.Builder()
+            .baseUrl(server.url("/"))
+            .client(new OkHttpClient.Builder().readTimeout(1, TimeUnit.MINUTES).build())
+            .build()
+            .create(ApiService.class);
+        downloader = new ResumableDownloader(api);
+        partialFile = new File(InstrumentationRegistry.getInstrumentation().getTargetContext().getCacheDir(),
+            "benchmark.bin" + ResumableDownloader.PARTIAL_SUFFIX);
+        ResumableDownloader.discard(partialFile);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        ResumableDownloader.discard(partialFile);
+        server.shutdown();
+    }
+
+    @Test
+    public void segmentedBeatsSingleStreamOnSlowLink() throws IOException {
+        // A known size below the threshold makes the downloader skip segmented mode.
+        long single = timeDownload(0);
+        int singleConnections = connections.getAndSet(0);
+        long segmented = timeDownload(-1);
+        int segmentedConnections = connections.get();
+
+        Log.i(TAG, FILE_SIZE / (1024 * 1024) + " MiB, " + ROUND_TRIP_MS + " ms RTT: single stream " + single
+            + " ms on " + singleConnections + " connection(s), segmented " + segmented + " ms on "
+            + segmentedConnections + " connection(s)");
+        assertTrue("Segmented mode did not add connections", segmentedConnections > 2);
+        assertTrue("Segmented mode was not faster", segmented < single);
+    }
+
+    private long timeDownload(long knownSize) throws IOException {
+        ResumableDownloader.discard(partialFile);
+        long started = SystemClock.elapsedRealtime();
+        downloader.download("benchmark.bin", partialFile, knownSize, null);
+        long elapsed = SystemClock.elapsedRealtime() - started;
+        assertContent();
+        return elapsed;
+    }
+
+    private void assertContent() throws IOException {
+        assertEquals(FILE_SIZE, partialFile.length());
+        byte[] buffer = new byte[64 * 1024];
+        int offset = 0;
+        try (InputStream in = new FileInputStream(partialFile)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] != content[offset + i]) {
+                        fail("Byte " + (offset + i) + " differs");
+                    }
+                }
+                offset += read;
+            }
+        }
+    }
+
+    // Serves the file whole or as a byte range, with the delay and rate cap of the simulated link.
+    private class RangeDispatcher extends Dispatcher {
+        @NonNull
+        @Override
+        public MockResponse dispatch(@NonNull RecordedRequest request) {
+            // The first request on a connection has sequence number 0.
+            if (request.getSequenceNumber() == 0) {
+                connections.incrementAndGet();
+            }
+            MockResponse response = new MockResponse()
+                .setHeader("ETag", ETAG)
+                .setHeader("Accept-Ranges", "bytes")
+                .setHeadersDelay(ROUND_TRIP_MS, TimeUnit.MILLISECONDS)
+                .throttleBody(BYTES_PER_PERIOD, PERIOD_MS, TimeUnit.MILLISECONDS);
+            String range = request.getHeader("Range");
+            if (range == null) {
+                return response.setBody(new Buffer().write(content));
+            }
+            // "bytes=start-end" or "bytes=start-"
+            String[] bounds = range.substring("bytes=".length()).split("-", -1);
+            int start = Integer.parseInt(bounds[0]);
+            int end = bounds[1].isEmpty() ? FILE_SIZE - 1 : Math.min(Integer.parseInt(bounds[1]), FILE_SIZE - 1);
+            return response.setResponseCode(206)
+                .setHeader("Content-Range", "bytes " + start + "-" + end + "/" + FILE_SIZE)
+                .setBody(new Buffer().write(content, start, end - start + 1));
+        }
+    }
+}
@@ -12,7 +12,9 @@ import retrofit2.http.DELETE;
 import retrofit2.http.GET;
 import retrofit2.http.Header;
 import retrofit2.http.POST;
+import retrofit2.http.PUT;
 import retrofit2.http.Path;
+import retrofit2.http.Query;
 import retrofit2.http.Streaming;
 
 public interface ApiService {
@@ -36,16 +38,68 @@ public interface ApiService {
     // --- FILE OPERATION ENDPOINTS ---
     // All of these require an Authorization header.
 
+    // Conditional: pass the validators of the cached listing (or null) and get a 304 if it is current.
+    // Keyset paged: up to `limit` files ordered by filename, starting after `after` (null for the first page).
+    // Streamed: the JSON array is parsed row by row by ListingIngester, never as a whole. Call it through
+    // RetrofitClient.getTransferApiService, whose client does not log (and so buffer) bodies.
+    @Streaming
     @GET("files")
-    Call<List<FileMetadata>> getFiles();
+    Call<ResponseBody> getFiles(@Header("If-None-Match") String etag, @Header("If-Modified-Since") String lastModified,
+                                      @Query("after") String after, @Query("limit") int limit);
+
+    // Changes since a cursor from the X-Change-Cursor header of /files or a previous page.
+    // At most `limit` changes per page; has_more says another page is waiting.
+    // 410 means the cursor expired and the client must fetch the full listing again.
+    @GET("files/changes")
+    Call<FileChanges> getFileChanges(@Query("cursor") String cursor, @Query("limit") int limit);
 
     @POST("upload")
     Call<UploadResponse> uploadFile(@Body RequestBody body);
 
+    // Stores a file from content the server already has, identified by its SHA-256, without sending it.
+    // 422 means the server does not hold that content and the file must be uploaded.
+    // 404/405 means the server has no dedup endpoint.
+    @POST("upload/dedup")
+    Call<UploadResponse> uploadByHash(@Body DedupUploadRequest request);
+
+    // Many small files in one multipart request, one "files" part each; the server stores every part
+    // as its own file and reports the outcome per file.
+    // 404/405 means the server has no batch endpoint; the client then uploads one by one.
+    @POST("upload/batch")
+    Call<BatchUploadResponse> uploadFiles(@Body RequestBody body);
+
+    // --- CHUNKED UPLOAD SESSION ENDPOINTS ---
+    // A session is opened once, filled chunk by chunk and committed at the end.
+    // The server answers every chunk with the offset it has durably stored.
+
+    @POST("uploads")
+    Call<UploadSession> createUploadSession(@Body UploadSessionRequest request);
+
+    @GET("uploads/{upload_id}")
+    Call<UploadSession> getUploadSession(@Path("upload_id") String uploadId);
+
+    @PUT("uploads/{upload_id}")
+    Call<UploadSession> uploadChunk(@Path("upload_id") String uploadId, @Header("Upload-Offset") long offset, @Body RequestBody chunk);
+
+    @POST("uploads/{upload_id}/commit")
+    Call<UploadResponse> commitUploadSession(@Path("upload_id") String uploadId);
+
+    // Range and If-Range are optional (pass null) and let an interrupted download resume.
     @GET("download/{filename}")
     @Streaming
-    Call<ResponseBody> downloadFile(@Path("filename") String filename);
+    Call<ResponseBody> downloadFile(@Path("filename") String filename, @Header("Range") String range, @Header("If-Range") String ifRange);
+
+    // The named files as one zip, streamed while the server builds it. The body is {"filenames": [...]}.
+    // 404/405 means the server has no archive endpoint; the client then downloads one by one.
+    @POST("download/archive")
+    @Streaming
+    Call<ResponseBody> downloadArchive(@Body RequestBody filenames);
 
     @DELETE("delete/{filename}")
     Call<ResponseBody> deleteFile(@Path("filename") String filename);
+
+    // Deletes up to a chunk of files in one request and reports the outcome per file.
+    // 404/405 means the server has no batch endpoint; the client then deletes one by one.
+    @POST("files/delete")
+    Call<BatchDeleteResponse> deleteFiles(@Body BatchDeleteRequest request);
 }
@@ -1,17 +1,182 @@
 package com.andreas.personalcloudclient;
 
 import android.content.Context;
+import androidx.annotation.NonNull;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
-@Database(entities = {FileMetadata.class}, version = 1, exportSchema = false)
+@Database(entities = {FileMetadata.class, FileSearchEntry.class, TransferRecord.class, SyncState.class}, version = 9, exportSchema = false)
 public abstract class AppDatabase extends RoomDatabase {
 
     public abstract FileDao fileDao();
 
+    public abstract TransferDao transferDao();
+
+    public abstract SyncStateDao syncStateDao();
+
     private static volatile AppDatabase INSTANCE;
 
+    // Version 2 adds the transfer journal. The files table is untouched.
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `transfers` ("
+                + "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                + "`direction` TEXT NOT NULL, "
+                + "`source` TEXT NOT NULL, "
+                + "`destination` TEXT, "
+                + "`filename` TEXT NOT NULL, "
+                + "`confirmed_offset` INTEGER NOT NULL, "
+                + "`total_bytes` INTEGER NOT NULL, "
+                + "`status` TEXT NOT NULL, "
+                + "`priority` TEXT NOT NULL, "
+                + "`upload_id` TEXT, "
+                + "`attempts` INTEGER NOT NULL, "
+                + "`updated_at` INTEGER NOT NULL)");
+        }
+    };
+
+    // Version 3 adds the validators of the cached file listing.
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `sync_state` ("
+                + "`key` TEXT NOT NULL, "
+                + "`etag` TEXT, "
+                + "`last_modified` TEXT, "
+                + "`validated_at` INTEGER NOT NULL, "
+                + "PRIMARY KEY(`key`))");
+        }
+    };
+
+    // Version 4 stores the change cursor of the file listing.
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE `sync_state` ADD COLUMN `cursor` TEXT");
+        }
+    };
+
+    // Version 5 adds the full-text index of the filenames, with the triggers Room uses to keep it in sync.
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `files_fts` USING FTS4("
+                + "`filename` TEXT, tokenize=unicode61, content=`files`)");
+            createFilesFtsTriggers(database);
+            // Index the files that are already cached.
+            database.execSQL("INSERT INTO `files_fts`(`files_fts`) VALUES ('rebuild')");
+        }
+    };
+
+    /**
+     * Version 6 stores modified_at as epoch millis and indexes every sorted and filtered view.
+     * SQLite cannot change a column's type in place, and the server's old text format is unknown
+     * here, so the cached listing is dropped and the next sync fetches it in full. Dropping the
+     * table also drops its FTS triggers, which are created again.
+     */
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("DROP TABLE IF EXISTS `files`");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `files` ("
+                + "`filename` TEXT NOT NULL, "
+                + "`file_type` TEXT, "
+                + "`size` INTEGER NOT NULL, "
+                + "`modified_at` INTEGER NOT NULL, "
+                + "PRIMARY KEY(`filename`))");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_files_file_type_filename` ON `files` (`file_type`, `filename`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_files_modified_at_filename` ON `files` (`modified_at`, `filename`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_files_size_filename` ON `files` (`size`, `filename`)");
+            createFilesFtsTriggers(database);
+            database.execSQL("INSERT INTO `files_fts`(`files_fts`) VALUES ('rebuild')");
+            // Without validators or a cursor the next getFiles fetches the whole listing.
+            database.execSQL("DELETE FROM `sync_state` WHERE `key` = '" + SyncState.KEY_FILE_LISTING + "'");
+        }
+    };
+
+    /**
+     * Version 7 adds the content hash of each file. Adding a column keeps the table, its rowids and
+     * its FTS triggers. The listing validators are dropped so the next sync fetches the full
+     * listing, which is what fills in the hashes of files that are already cached.
+     */
+    static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE `files` ADD COLUMN `content_hash` TEXT");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_files_content_hash` ON `files` (`content_hash`)");
+            database.execSQL("DELETE FROM `sync_state` WHERE `key` = '" + SyncState.KEY_FILE_LISTING + "'");
+        }
+    };
+
+    /**
+     * Version 8 indexes the sorted views of a single file type. With only (file_type, filename)
+     * to filter by, SQLite sorted every filtered "newest" or "largest" page in a temp B-tree.
+     */
+    static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_files_file_type_modified_at_filename` ON `files` (`file_type`, `modified_at`, `filename`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_files_file_type_size_filename` ON `files` (`file_type`, `size`, `filename`)");
+        }
+    };
+
+    /**
+     * Version 9 keeps the number of files of each type in file_type_counts, updated by triggers on
+     * every write, so the list can show its size without counting the table after each sync.
+     */
+    static final Migration MIGRATION_8_9 = new Migration(8, 9) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            createFileTypeCounts(database);
+        }
+    };
+
+    // Creates what Room does not generate itself. Tests building the database by hand add it too.
+    static final RoomDatabase.Callback CALLBACK = new RoomDatabase.Callback() {
+        @Override
+        public void onCreate(@NonNull SupportSQLiteDatabase database) {
+            createFileTypeCounts(database);
+        }
+    };
+
+    /**
+     * The per-type file counts and the triggers that maintain them, filled from the files already cached.
+     * Files without a type are counted under ''. Upserts update rows in place, so an insert that
+     * replaces a row is never counted twice.
+     */
+    private static void createFileTypeCounts(SupportSQLiteDatabase database) {
+        database.execSQL("CREATE TABLE IF NOT EXISTS `file_type_counts` ("
+            + "`file_type` TEXT NOT NULL, `file_count` INTEGER NOT NULL, PRIMARY KEY(`file_type`))");
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS file_type_counts_AFTER_INSERT AFTER INSERT ON `files` BEGIN "
+            + "INSERT OR IGNORE INTO `file_type_counts` VALUES (IFNULL(NEW.`file_type`, ''), 0); "
+            + "UPDATE `file_type_counts` SET `file_count` = `file_count` + 1 WHERE `file_type` = IFNULL(NEW.`file_type`, ''); END");
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS file_type_counts_AFTER_DELETE AFTER DELETE ON `files` BEGIN "
+            + "UPDATE `file_type_counts` SET `file_count` = `file_count` - 1 WHERE `file_type` = IFNULL(OLD.`file_type`, ''); END");
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS file_type_counts_AFTER_UPDATE AFTER UPDATE OF `file_type` ON `files` "
+            + "WHEN IFNULL(OLD.`file_type`, '') <> IFNULL(NEW.`file_type`, '') BEGIN "
+            + "UPDATE `file_type_counts` SET `file_count` = `file_count` - 1 WHERE `file_type` = IFNULL(OLD.`file_type`, ''); "
+            + "INSERT OR IGNORE INTO `file_type_counts` VALUES (IFNULL(NEW.`file_type`, ''), 0); "
+            + "UPDATE `file_type_counts` SET `file_count` = `file_count` + 1 WHERE `file_type` = IFNULL(NEW.`file_type`, ''); END");
+        database.execSQL("INSERT OR REPLACE INTO `file_type_counts` "
+            + "SELECT IFNULL(`file_type`, ''), COUNT(*) FROM `files` GROUP BY IFNULL(`file_type`, '')");
+    }
+
+    // The triggers Room generates to keep the external-content files_fts in step with files.
+    private static void createFilesFtsTriggers(SupportSQLiteDatabase database) {
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_files_fts_BEFORE_UPDATE BEFORE UPDATE ON `files` "
+            + "BEGIN DELETE FROM `files_fts` WHERE `docid`=OLD.`rowid`; END");
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_files_fts_BEFORE_DELETE BEFORE DELETE ON `files` "
+            + "BEGIN DELETE FROM `files_fts` WHERE `docid`=OLD.`rowid`; END");
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_files_fts_AFTER_UPDATE AFTER UPDATE ON `files` "
+            + "BEGIN INSERT INTO `files_fts`(`docid`, `filename`) VALUES (NEW.`rowid`, NEW.`filename`); END");
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_files_fts_AFTER_INSERT AFTER INSERT ON `files` "
+            + "BEGIN INSERT INTO `files_fts`(`docid`, `filename`) VALUES (NEW.`rowid`, NEW.`filename`); END");
+    }
+
     // This is a singleton pattern to ensure only one instance of the database.
     public static AppDatabase getDatabase(final Context context) {
         if (INSTANCE == null) {
@@ -19,6 +184,8 @@ public abstract class AppDatabase extends RoomDatabase {
                 if (INSTANCE == null) {
                     INSTANCE = Room.databaseBuilder(context.getApplicationContext(),
                             AppDatabase.class, "file_database")
+                        .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5, MIGRATION_5_6, MIGRATION_6_7, MIGRATION_7_8, MIGRATION_8_9)
+                        .addCallback(CALLBACK)
                         .build();
                 }
             }
@@ -0,0 +1,171 @@
+package com.andreas.personalcloudclient;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.os.Environment;
+import android.provider.MediaStore;
+import android.util.Log;
+import android.webkit.MimeTypeMap;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import retrofit2.Response;
+
+/**
+ * Downloads many files as one zip that the server streams while it builds it.
+ * There is a single request for the whole selection, and the body is consumed in one pass:
+ * either written as one .zip into Downloads, or expanded entry by entry straight into
+ * Downloads as it arrives, so nothing is buffered on disk first.
+ * Expanding needs entries that ZipInputStream can read while streaming: DEFLATED entries,
+ * or STORED entries whose sizes are in the local header.
+ * Every call here is blocking and must run on a background thread.
+ */
+public class ArchiveDownloader {
+
+    private static final String TAG = "ArchiveDownloader";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // The server has no archive endpoint; the caller can fall back to one download per file.
+    public static class UnsupportedException extends IOException {
+        public UnsupportedException(String message) {
+            super(message);
+        }
+    }
+
+    private final ContentResolver contentResolver;
+    private final ApiService apiService;
+
+    public ArchiveDownloader(ContentResolver contentResolver, ApiService apiService) {
+        this.contentResolver = contentResolver;
+        this.apiService = apiService;
+    }
+
+    /**
+     * @param filenames   The JSON request body naming the files; it may be streamed.
+     * @param archiveName The name of the .zip in Downloads when not expanding.
+     * @param expand      Save every entry as its own file instead of saving the zip.
+     * @param listener    Optional; receives the compressed bytes read so far.
+     * @return The number of files saved (1 for a zip).
+     */
+    public int download(RequestBody filenames, String archiveName, boolean expand, DownloadProgressListener listener) throws IOException {
+        Response<ResponseBody> response = apiService.downloadArchive(filenames).execute();
+        if (response.code() == 404 || response.code() == 405 || response.code() == 501) {
+            closeQuietly(response.errorBody());
+            throw new UnsupportedException("Server does not support archive downloads. Code: " + response.code());
+        }
+        ResponseBody body = response.body();
+        if (!response.isSuccessful() || body == null) {
+            closeQuietly(response.errorBody());
+            throw new IOException("Archive download failed. Code: " + response.code());
+        }
+
+        try (InputStream in = new CountingInputStream(body.byteStream(), body.contentLength(), listener)) {
+            if (!expand) {
+                saveToDownloads(archiveName, in);
+                return 1;
+            }
+            int saved = 0;
+            try (ZipInputStream zip = new ZipInputStream(in)) {
+                ZipEntry entry;
+                while ((entry = zip.getNextEntry()) != null) {
+                    if (entry.isDirectory()) continue;
+                    // Only the last path segment: entries cannot write outside Downloads.
+                    String name = entry.getName();
+                    name = name.substring(name.lastIndexOf('/') + 1);
+                    if (name.isEmpty()) continue;
+                    saveToDownloads(name, zip);
+                    saved++;
+                }
+            }
+            return saved;
+        }
+    }
+
+    /**
+     * Streams one file into the public Downloads collection.
+     * The MediaStore row stays pending until the last byte is written and is removed again
+     * if the stream fails, so no half-written file is left behind.
+     * For a ZipInputStream, reading to the end means reading to the end of the current entry.
+     */
+    private void saveToDownloads(String filename, InputStream in) throws IOException {
+        ContentValues values = new ContentValues();
+        values.put(MediaStore.MediaColumns.DISPLAY_NAME, filename);
+        values.put(MediaStore.MediaColumns.MIME_TYPE, mimeTypeOf(filename));
+        values.put(MediaStore.MediaColumns.RELATIVE_PATH, Environment.DIRECTORY_DOWNLOADS);
+        values.put(MediaStore.MediaColumns.IS_PENDING, 1);
+
+        Uri uri = contentResolver.insert(MediaStore.Downloads.EXTERNAL_CONTENT_URI, values);
+        if (uri == null) {
+            throw new IOException("Cannot create " + filename + " in Downloads");
+        }
+        try (OutputStream out = contentResolver.openOutputStream(uri)) {
+            if (out == null) throw new IOException("Cannot open " + uri);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to save " + filename, e);
+            contentResolver.delete(uri, null, null);
+            throw e;
+        }
+
+        ContentValues publish = new ContentValues();
+        publish.put(MediaStore.MediaColumns.IS_PENDING, 0);
+        contentResolver.update(uri, publish, null, null);
+    }
+
+    private static String mimeTypeOf(String filename) {
+        String extension = MimeTypeMap.getFileExtensionFromUrl(filename);
+        String type = extension != null ? MimeTypeMap.getSingleton().getMimeTypeFromExtension(extension.toLowerCase()) : null;
+        return type != null ? type : "application/octet-stream";
+    }
+
+    private static void closeQuietly(ResponseBody body) {
+        if (body != null) body.close();
+    }
+
+    // Reports the bytes read from the network, before they are inflated.
+    private static class CountingInputStream extends FilterInputStream {
+        private final long totalBytes;
+        private final DownloadProgressListener listener;
+        private long bytesRead = 0;
+
+        CountingInputStream(InputStream in, long totalBytes, DownloadProgressListener listener) {
+            super(in);
+            this.totalBytes = totalBytes;
+            this.listener = listener;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value != -1) count(1);
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) count(read);
+            return read;
+        }
+
+        private void count(int read) {
+            bytesRead += read;
+            if (listener != null) {
+                listener.onBytesTransferred(bytesRead, Math.max(totalBytes, 0));
+            }
+        }
+    }
+}
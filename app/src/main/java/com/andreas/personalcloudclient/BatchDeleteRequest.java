@@ -0,0 +1,16 @@
+package com.andreas.personalcloudclient;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.util.List;
+
+// This class represents the JSON body of a batch delete: the filenames of one chunk.
+public class BatchDeleteRequest {
+
+    @SerializedName("filenames")
+    private List<String> filenames;
+
+    public BatchDeleteRequest(List<String> filenames) {
+        this.filenames = filenames;
+    }
+}
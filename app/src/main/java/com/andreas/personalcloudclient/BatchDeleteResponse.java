@@ -0,0 +1,26 @@
+package com.andreas.personalcloudclient;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.util.Collections;
+import java.util.List;
+
+// The server's answer to a batch delete: which files are gone and which could not be deleted.
+public class BatchDeleteResponse {
+
+    // Deleted now, or already missing; either way the file is gone.
+    @SerializedName("deleted")
+    private List<String> deleted;
+
+    @SerializedName("failed")
+    private List<BatchFailure> failed;
+
+    // --- Getters ---
+    public List<String> getDeleted() {
+        return deleted != null ? deleted : Collections.emptyList();
+    }
+
+    public List<BatchFailure> getFailed() {
+        return failed != null ? failed : Collections.emptyList();
+    }
+}
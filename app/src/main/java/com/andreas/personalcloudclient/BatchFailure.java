@@ -0,0 +1,16 @@
+package com.andreas.personalcloudclient;
+
+import com.google.gson.annotations.SerializedName;
+
+// One file a batch request could not handle, with the server's reason.
+public class BatchFailure {
+
+    @SerializedName("filename")
+    private String filename;
+
+    @SerializedName("error")
+    private String error;
+
+    public String getFilename() { return filename; }
+    public String getError() { return error; }
+}
@@ -0,0 +1,25 @@
+package com.andreas.personalcloudclient;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.util.Collections;
+import java.util.List;
+
+// The server's answer to a bundled upload: which files were stored and which were rejected.
+public class BatchUploadResponse {
+
+    @SerializedName("uploaded")
+    private List<String> uploaded;
+
+    @SerializedName("failed")
+    private List<BatchFailure> failed;
+
+    // --- Getters ---
+    public List<String> getUploaded() {
+        return uploaded != null ? uploaded : Collections.emptyList();
+    }
+
+    public List<BatchFailure> getFailed() {
+        return failed != null ? failed : Collections.emptyList();
+    }
+}
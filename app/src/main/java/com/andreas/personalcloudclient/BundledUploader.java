@@ -0,0 +1,162 @@
+package com.andreas.personalcloudclient;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.MultipartBody;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import retrofit2.Response;
+
+/**
+ * Uploads a bundle of small files in a single multipart request, one part per file.
+ * The parts are streamed from their providers as the request is written; a file whose
+ * provider cannot be re-read is held in memory instead of being staged in the cache,
+ * which is cheap because only small files are bundled.
+ * Servers without the batch endpoint get one multipart request per file instead.
+ * Every call here is blocking and must run on a background thread.
+ */
+public class BundledUploader {
+
+    private static final String TAG = "BundledUploader";
+
+    // One file of a bundle.
+    public static class Entry {
+        final Uri uri;
+        final String filename;
+        final long size;
+
+        public Entry(Uri uri, String filename, long size) {
+            this.uri = uri;
+            this.filename = filename;
+            this.size = size;
+        }
+
+        public String getFilename() { return filename; }
+        public long getSize() { return size; }
+    }
+
+    private final ContentResolver contentResolver;
+    private final ApiService apiService;
+
+    public BundledUploader(ContentResolver contentResolver, ApiService apiService) {
+        this.contentResolver = contentResolver;
+        this.apiService = apiService;
+    }
+
+    /**
+     * Sends the bundle. Files the server rejected, or that could not be read, are put into
+     * failures with a reason; a failure of the whole request is thrown instead.
+     *
+     * @param listener Receives the bytes of the whole bundle sent so far.
+     * @return The filenames the server stored.
+     */
+    public List<String> upload(List<Entry> bundle, ProgressRequestBody.ProgressListener listener,
+                               Map<String, String> failures) throws IOException {
+        long bundleBytes = 0;
+        for (Entry entry : bundle) {
+            bundleBytes += entry.size;
+        }
+        final long totalBytes = bundleBytes;
+
+        MultipartBody.Builder multipart = new MultipartBody.Builder().setType(MultipartBody.FORM);
+        List<Entry> sent = new ArrayList<>();
+        long offset = 0;
+        for (Entry entry : bundle) {
+            final long partOffset = offset;
+            RequestBody part = partBody(entry, (sentBytes, partBytes) -> listener.onProgressUpdate(partOffset + sentBytes, totalBytes));
+            if (part == null) {
+                failures.put(entry.filename, "Cannot read file");
+                continue;
+            }
+            multipart.addFormDataPart("files", entry.filename, part);
+            sent.add(entry);
+            offset += entry.size;
+        }
+        if (sent.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Response<BatchUploadResponse> response = apiService.uploadFiles(multipart.build()).execute();
+        if (response.code() == 404 || response.code() == 405) {
+            closeQuietly(response.errorBody());
+            return uploadOneByOne(sent, listener, totalBytes, failures);
+        }
+        if (!response.isSuccessful() || response.body() == null) {
+            closeQuietly(response.errorBody());
+            throw new IOException("Upload failed. Code: " + response.code());
+        }
+        for (BatchFailure failure : response.body().getFailed()) {
+            failures.put(failure.getFilename(), failure.getError());
+        }
+        return response.body().getUploaded();
+    }
+
+    // Fallback for servers without upload/batch. Still one task, so still one notification.
+    private List<String> uploadOneByOne(List<Entry> bundle, ProgressRequestBody.ProgressListener listener,
+                                        long totalBytes, Map<String, String> failures) throws IOException {
+        List<String> uploaded = new ArrayList<>();
+        long offset = 0;
+        for (Entry entry : bundle) {
+            final long partOffset = offset;
+            offset += entry.size;
+            RequestBody part = partBody(entry, (sentBytes, partBytes) -> listener.onProgressUpdate(partOffset + sentBytes, totalBytes));
+            if (part == null) {
+                failures.put(entry.filename, "Cannot read file");
+                continue;
+            }
+            MultipartBody body = new MultipartBody.Builder()
+                .setType(MultipartBody.FORM)
+                .addFormDataPart("file", entry.filename, part)
+                .build();
+            try {
+                Response<UploadResponse> response = apiService.uploadFile(body).execute();
+                if (response.isSuccessful()) {
+                    uploaded.add(entry.filename);
+                } else {
+                    closeQuietly(response.errorBody());
+                    failures.put(entry.filename, "Upload failed. Code: " + response.code());
+                }
+            } catch (IOException e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    // Paused: the whole bundle is sent again on resume.
+                    throw e;
+                }
+                failures.put(entry.filename, "Upload error: " + e.getMessage());
+            }
+        }
+        return uploaded;
+    }
+
+    // Streams from the provider when it can be re-read, otherwise reads the file into memory. Null if unreadable.
+    private RequestBody partBody(Entry entry, ProgressRequestBody.ProgressListener listener) {
+        if (ProgressRequestBody.canStream(contentResolver, entry.uri, entry.size)) {
+            return new ProgressRequestBody(contentResolver, entry.uri, entry.size, listener);
+        }
+        try (InputStream in = contentResolver.openInputStream(entry.uri)) {
+            if (in == null) return null;
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.max(entry.size, 0));
+            byte[] buffer = new byte[8 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new ProgressRequestBody(out.toByteArray(), listener);
+        } catch (IOException | SecurityException e) {
+            Log.e(TAG, "Failed to read " + entry.uri, e);
+            return null;
+        }
+    }
+
+    private static void closeQuietly(ResponseBody body) {
+        if (body != null) body.close();
+    }
+}
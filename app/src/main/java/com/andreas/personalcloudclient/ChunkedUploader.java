@@ -0,0 +1,312 @@
+package com.andreas.personalcloudclient;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import retrofit2.Response;
+
+/**
+ * Uploads a file through a resumable session: init, put chunk at offset, commit.
+ * Chunks are streamed straight from the ContentResolver, so nothing is staged in the cache.
+ * Every call here is blocking and must run on a background thread.
+ */
+public class ChunkedUploader {
+
+    private static final String TAG = "ChunkedUploader";
+
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_ATTEMPTS_PER_CHUNK = 5;
+    private static final long RETRY_BASE_DELAY_MS = 1000;
+    private static final MediaType OCTET_STREAM = MediaType.parse("application/octet-stream");
+
+    // Receives the durable state of the session so it can be persisted by the caller.
+    public interface SessionListener {
+        void onSessionCreated(String uploadId);
+        void onChunkAcknowledged(String uploadId, long confirmedOffset, long totalBytes);
+    }
+
+    // Thrown when the server does not offer upload sessions, so the caller can fall back.
+    public static class UnsupportedException extends IOException {
+        public UnsupportedException(String message) {
+            super(message);
+        }
+    }
+
+    private final ContentResolver contentResolver;
+    private final ApiService apiService;
+    private final long retryBaseDelayMs;
+
+    public ChunkedUploader(Context context, ApiService apiService) {
+        this(context, apiService, RETRY_BASE_DELAY_MS);
+    }
+
+    // Tests use a short delay so retries do not take seconds.
+    ChunkedUploader(Context context, ApiService apiService, long retryBaseDelayMs) {
+        this.contentResolver = context.getApplicationContext().getContentResolver();
+        this.apiService = apiService;
+        this.retryBaseDelayMs = retryBaseDelayMs;
+    }
+
+    /**
+     * Uploads the content behind the Uri, resuming the given session when the server still knows it.
+     *
+     * @param resumeUploadId The session to resume, or null to start a new one.
+     * @return The server response of the final commit.
+     */
+    public UploadResponse upload(Uri uri, String filename, long totalBytes, String resumeUploadId,
+                                 SessionListener sessionListener,
+                                 ProgressRequestBody.ProgressListener progressListener) throws IOException {
+        UploadSession session = null;
+        if (resumeUploadId != null) {
+            session = fetchSession(resumeUploadId);
+        }
+        if (session == null) {
+            session = createSession(filename, totalBytes);
+            sessionListener.onSessionCreated(session.getUploadId());
+        }
+
+        final String uploadId = session.getUploadId();
+        final int chunkSize = session.getChunkSize() > 0 ? session.getChunkSize() : DEFAULT_CHUNK_SIZE;
+        long offset = session.getOffset();
+        Log.d(TAG, "Uploading " + filename + " in session " + uploadId + " from offset " + offset);
+
+        try (ChunkSource source = new ChunkSource(uri, totalBytes)) {
+            int attempts = 0;
+            while (offset < totalBytes) {
+                int length = (int) Math.min(chunkSize, totalBytes - offset);
+                RequestBody chunk = source.chunkAt(offset, length, progressListener);
+                try {
+                    Response<UploadSession> response = apiService.uploadChunk(uploadId, offset, chunk).execute();
+                    if (response.isSuccessful() && response.body() != null) {
+                        offset = response.body().getOffset();
+                        attempts = 0;
+                        sessionListener.onChunkAcknowledged(uploadId, offset, totalBytes);
+                    } else if (response.code() == 409) {
+                        // The server holds a different offset than we assumed. The retry below asks it for
+                        // that offset; counting the conflict as an attempt stops a server that answers 409
+                        // every time from keeping us in this loop forever.
+                        throw new IOException("Chunk at " + offset + " conflicts with the session offset (409)");
+                    } else {
+                        throw new IOException("Chunk upload failed. Code: " + response.code());
+                    }
+                } catch (IOException e) {
+                    if (++attempts >= MAX_ATTEMPTS_PER_CHUNK) {
+                        throw e;
+                    }
+                    Log.w(TAG, "Chunk at " + offset + " failed (attempt " + attempts + "), retrying", e);
+                    sleepBeforeRetry(attempts);
+                    // Only bytes the server acknowledged count, so ask it where to resume.
+                    try {
+                        offset = requireSession(uploadId).getOffset();
+                    } catch (IOException stillOffline) {
+                        Log.d(TAG, "Could not query session offset, retrying from " + offset);
+                    }
+                }
+            }
+        }
+
+        Response<UploadResponse> commit = apiService.commitUploadSession(uploadId).execute();
+        if (!commit.isSuccessful()) {
+            throw new IOException("Upload commit failed. Code: " + commit.code());
+        }
+        return commit.body();
+    }
+
+    private UploadSession createSession(String filename, long totalBytes) throws IOException {
+        Response<UploadSession> response = apiService.createUploadSession(new UploadSessionRequest(filename, totalBytes)).execute();
+        if (response.code() == 404 || response.code() == 405 || response.code() == 501) {
+            throw new UnsupportedException("Server does not support chunked uploads. Code: " + response.code());
+        }
+        if (!response.isSuccessful() || response.body() == null) {
+            throw new IOException("Could not start upload session. Code: " + response.code());
+        }
+        return response.body();
+    }
+
+    // Returns the session, or null if the server no longer knows it.
+    private UploadSession fetchSession(String uploadId) throws IOException {
+        Response<UploadSession> response = apiService.getUploadSession(uploadId).execute();
+        if (response.isSuccessful() && response.body() != null) {
+            return response.body();
+        }
+        if (response.code() == 404 || response.code() == 410) {
+            return null;
+        }
+        throw new IOException("Could not query upload session. Code: " + response.code());
+    }
+
+    private UploadSession requireSession(String uploadId) throws IOException {
+        UploadSession session = fetchSession(uploadId);
+        if (session == null) {
+            throw new IOException("Upload session " + uploadId + " expired.");
+        }
+        return session;
+    }
+
+    private void sleepBeforeRetry(int attempt) throws IOException {
+        try {
+            Thread.sleep(retryBaseDelayMs << Math.min(attempt - 1, 4));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Upload interrupted", e);
+        }
+    }
+
+    /**
+     * Produces request bodies for byte ranges of the picked file.
+     * Seekable providers are read positionally, so a retried chunk costs no extra I/O.
+     * Streams (pipes, some cloud providers) keep the last chunk in memory for retries and are
+     * reopened and skipped only if the server asks for an earlier offset.
+     */
+    private class ChunkSource implements AutoCloseable {
+        private final Uri uri;
+        private final long totalBytes;
+        private ParcelFileDescriptor descriptor;
+        private FileChannel channel;
+
+        private InputStream stream;
+        private long streamPosition;
+        private byte[] buffered;
+        private long bufferedOffset = -1;
+        private int bufferedLength;
+
+        ChunkSource(Uri uri, long totalBytes) throws IOException {
+            this.uri = uri;
+            this.totalBytes = totalBytes;
+            descriptor = contentResolver.openFileDescriptor(uri, "r");
+            if (descriptor != null) {
+                FileChannel candidate = new FileInputStream(descriptor.getFileDescriptor()).getChannel();
+                try {
+                    if (candidate.size() >= totalBytes) {
+                        channel = candidate;
+                    }
+                } catch (IOException e) {
+                    Log.d(TAG, "Provider is not seekable, streaming instead", e);
+                }
+            }
+        }
+
+        RequestBody chunkAt(long offset, int length, ProgressRequestBody.ProgressListener listener) throws IOException {
+            if (channel != null) {
+                return new ChannelChunkBody(channel, offset, length, totalBytes, listener);
+            }
+            if (bufferedOffset < 0 || offset < bufferedOffset || offset + length > bufferedOffset + bufferedLength) {
+                fill(offset, length);
+            }
+            int start = (int) (offset - bufferedOffset);
+            return RequestBody.create(buffered, OCTET_STREAM, start, length);
+        }
+
+        private void fill(long offset, int length) throws IOException {
+            if (stream == null || offset < streamPosition) {
+                if (stream != null) {
+                    stream.close();
+                }
+                stream = contentResolver.openInputStream(uri);
+                if (stream == null) {
+                    throw new IOException("Cannot open " + uri);
+                }
+                streamPosition = 0;
+            }
+            while (streamPosition < offset) {
+                long skipped = stream.skip(offset - streamPosition);
+                if (skipped <= 0) {
+                    throw new IOException("Source ended before offset " + offset);
+                }
+                streamPosition += skipped;
+            }
+            if (buffered == null || buffered.length < length) {
+                buffered = new byte[length];
+            }
+            int read = 0;
+            while (read < length) {
+                int n = stream.read(buffered, read, length - read);
+                if (n == -1) {
+                    throw new IOException("Source ended early at " + (offset + read));
+                }
+                read += n;
+            }
+            streamPosition += read;
+            bufferedOffset = offset;
+            bufferedLength = read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (stream != null) {
+                stream.close();
+            }
+            if (descriptor != null) {
+                descriptor.close();
+            }
+        }
+    }
+
+    // A request body that streams one byte range of a FileChannel using positional reads.
+    private class ChannelChunkBody extends RequestBody {
+        private final FileChannel channel;
+        private final long offset;
+        private final int length;
+        private final long totalBytes;
+        private final ProgressRequestBody.ProgressListener listener;
+
+        ChannelChunkBody(FileChannel channel, long offset, int length, long totalBytes,
+                         ProgressRequestBody.ProgressListener listener) {
+            this.channel = channel;
+            this.offset = offset;
+            this.length = length;
+            this.totalBytes = totalBytes;
+            this.listener = listener;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return OCTET_STREAM;
+        }
+
+        @Override
+        public long contentLength() {
+            return length;
+        }
+
+        @Override
+        public void writeTo(@NonNull BufferedSink sink) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_SIZE);
+            long position = offset;
+            long end = offset + length;
+            while (position < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(IO_BUFFER_SIZE, end - position));
+                int read = channel.read(buffer, position);
+                if (read == -1) {
+                    throw new IOException("Source ended early at " + position);
+                }
+                buffer.flip();
+                sink.write(buffer);
+                position += read;
+                reportProgress(listener, position, totalBytes);
+            }
+        }
+    }
+
+    private void reportProgress(ProgressRequestBody.ProgressListener listener, long bytesUploaded, long totalBytes) {
+        if (listener != null) {
+            listener.onProgressUpdate(bytesUploaded, totalBytes);
+        }
+    }
+}
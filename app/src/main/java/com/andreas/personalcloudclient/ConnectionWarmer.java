@@ -0,0 +1,53 @@
+package com.andreas.personalcloudclient;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Opens a pooled connection to the server while the app is still starting.
+ * DNS, TCP and TLS are paid during the splash screen instead of by the first listing,
+ * and because the connection lives in the shared pool, the listing, thumbnails and
+ * transfers all reuse it (multiplexed when the server speaks HTTP/2).
+ */
+public class ConnectionWarmer {
+
+    private static final String TAG = "ConnectionWarmer";
+    private static final AtomicBoolean started = new AtomicBoolean(false);
+
+    // Safe to call repeatedly; only the first call per process does anything.
+    public static void warmUp(Context context) {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+        Context appContext = context.getApplicationContext();
+        final String BASE_URL = appContext.getString(R.string.api_base_url);
+        final long startedAt = System.currentTimeMillis();
+
+        // A HEAD request has no body, so all it costs is the connection itself.
+        Request request = new Request.Builder().url(BASE_URL).head().build();
+        RetrofitClient.getHttpClient(appContext).newCall(request).enqueue(new Callback() {
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                Log.d(TAG, "Connection ready over " + response.protocol() + " in " + (System.currentTimeMillis() - startedAt) + " ms");
+                response.close();
+            }
+
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                // Not an error; the first real request simply connects on its own.
+                Log.d(TAG, "Warm-up failed: " + e.getMessage());
+                started.set(false);
+            }
+        });
+    }
+}
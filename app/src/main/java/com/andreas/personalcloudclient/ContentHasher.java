@@ -0,0 +1,159 @@
+package com.andreas.personalcloudclient;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Computes the SHA-256 of a file in one streaming pass.
+ * One thread reads the file into a small ring of buffers while the calling thread digests
+ * the buffers already filled, so disk or provider reads overlap with hashing instead of
+ * alternating with it. Memory stays at BUFFER_COUNT buffers however large the file is.
+ * Blocking; call it on a background thread. Interrupting the caller stops the reader too.
+ */
+public final class ContentHasher {
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final int BUFFER_COUNT = 4;
+
+    // Shared by every hash in progress; idle threads are released after a minute.
+    private static final ExecutorService readers = Executors.newCachedThreadPool();
+
+    private ContentHasher() {}
+
+    // A filled buffer, the end of the file (length -1), or a read error.
+    private static final class Chunk {
+        final byte[] buffer;
+        final int length;
+        final IOException error;
+
+        Chunk(byte[] buffer, int length, IOException error) {
+            this.buffer = buffer;
+            this.length = length;
+            this.error = error;
+        }
+    }
+
+    // Opens the bytes to hash. Lets the hashing itself run without a ContentResolver, e.g. in unit tests.
+    interface Source {
+        InputStream open() throws IOException;
+    }
+
+    // Returns the lowercase hex SHA-256 of the Uri's content.
+    public static String sha256(ContentResolver contentResolver, Uri uri) throws IOException {
+        return sha256(contentResolver, uri, -1);
+    }
+
+    /**
+     * The same, with the file's size if known (else -1). A file that fits into one buffer is
+     * hashed on the calling thread: there is no reading to overlap, and bundles hash many of them.
+     */
+    public static String sha256(ContentResolver contentResolver, Uri uri, long size) throws IOException {
+        return sha256(String.valueOf(uri), () -> {
+            InputStream in = contentResolver.openInputStream(uri);
+            if (in == null) throw new IOException("Cannot open " + uri);
+            return in;
+        }, size);
+    }
+
+    // The same for any source; name only appears in error messages.
+    static String sha256(String name, Source source) throws IOException {
+        return sha256(name, source, -1);
+    }
+
+    static String sha256(String name, Source source, long size) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 is not available", e);
+        }
+
+        if (size >= 0 && size <= BUFFER_SIZE) {
+            // Reads to the end, so a file that grew since its size was taken is still hashed whole.
+            byte[] buffer = new byte[(int) Math.max(size, 1)];
+            try (InputStream in = source.open()) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                }
+            } catch (RuntimeException e) {
+                throw new IOException("Cannot read " + name, e);
+            }
+            return toHex(digest.digest());
+        }
+
+        BlockingQueue<byte[]> free = new ArrayBlockingQueue<>(BUFFER_COUNT);
+        BlockingQueue<Chunk> filled = new ArrayBlockingQueue<>(BUFFER_COUNT + 1);
+        for (int i = 0; i < BUFFER_COUNT; i++) {
+            free.add(new byte[BUFFER_SIZE]);
+        }
+
+        Future<?> reader = readers.submit(() -> {
+            try (InputStream in = source.open()) {
+                while (true) {
+                    byte[] buffer = free.take();
+                    int length = readFully(in, buffer);
+                    if (length > 0) {
+                        filled.put(new Chunk(buffer, length, null));
+                    }
+                    if (length < buffer.length) break;
+                }
+                filled.put(new Chunk(null, -1, null));
+            } catch (IOException e) {
+                filled.offer(new Chunk(null, -1, e));
+            } catch (RuntimeException e) {
+                // E.g. a SecurityException for a revoked grant: report it, or the hashing thread waits forever.
+                filled.offer(new Chunk(null, -1, new IOException("Cannot read " + name, e)));
+            } catch (InterruptedException e) {
+                // Cancelled by the hashing thread; nobody is waiting for more chunks.
+            }
+            return null;
+        });
+
+        try {
+            while (true) {
+                Chunk chunk = filled.take();
+                if (chunk.error != null) throw chunk.error;
+                if (chunk.length < 0) break;
+                digest.update(chunk.buffer, 0, chunk.length);
+                free.put(chunk.buffer);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Hashing interrupted");
+        } finally {
+            reader.cancel(true);
+        }
+        return toHex(digest.digest());
+    }
+
+    // Fills the buffer unless the stream ends first; returns the bytes read.
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int length = 0;
+        while (length < buffer.length) {
+            int read = in.read(buffer, length, buffer.length - length);
+            if (read == -1) break;
+            length += read;
+        }
+        return length;
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
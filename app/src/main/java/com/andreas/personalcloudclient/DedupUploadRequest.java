@@ -0,0 +1,22 @@
+package com.andreas.personalcloudclient;
+
+import com.google.gson.annotations.SerializedName;
+
+// This class represents the JSON body of an upload by hash: store this content under this name.
+public class DedupUploadRequest {
+
+    @SerializedName("filename")
+    private String filename;
+
+    @SerializedName("sha256")
+    private String sha256;
+
+    @SerializedName("size")
+    private long size;
+
+    public DedupUploadRequest(String filename, String sha256, long size) {
+        this.filename = filename;
+        this.sha256 = sha256;
+        this.size = size;
+    }
+}
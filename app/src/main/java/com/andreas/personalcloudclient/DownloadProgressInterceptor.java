@@ -1,7 +1,5 @@
 package com.andreas.personalcloudclient;
 
-import android.os.Handler;
-import android.os.Looper;
 import androidx.annotation.NonNull;
 import java.io.IOException;
 import okhttp3.Interceptor;
@@ -14,17 +12,14 @@ import okio.ForwardingSource;
 import okio.Okio;
 import okio.Source;
 
+// Counts response bytes for calls that carry a DownloadProgressListener tag.
+// Installed once on the shared transfer client, so listeners are attached per call.
 public class DownloadProgressInterceptor implements Interceptor {
 
-    private final DownloadProgressListener listener;
-
-    public DownloadProgressInterceptor(DownloadProgressListener listener) {
-        this.listener = listener;
-    }
-
     @NonNull
     @Override
     public Response intercept(@NonNull Chain chain) throws IOException {
+        DownloadProgressListener listener = chain.request().tag(DownloadProgressListener.class);
         Response originalResponse = chain.proceed(chain.request());
 
         if (listener == null) {
@@ -68,17 +63,14 @@ public class DownloadProgressInterceptor implements Interceptor {
         private Source source(Source source) {
             return new ForwardingSource(source) {
                 long totalBytesRead = 0L;
-                Handler handler = new Handler(Looper.getMainLooper());
 
                 @Override
                 public long read(@NonNull Buffer sink, long byteCount) throws IOException {
                     long bytesRead = super.read(sink, byteCount);
                     if (bytesRead != -1) {
                         totalBytesRead += bytesRead;
-                        int progress = (int) ((totalBytesRead * 100) / responseBody.contentLength());
-
-                        // Post the progress update to the main thread
-                        handler.post(() -> progressListener.onProgressUpdate(progress));
+                        // Only record the count; TransferProgressDispatcher samples it for the UI.
+                        progressListener.onBytesTransferred(totalBytesRead, responseBody.contentLength());
                     }
                     return bytesRead;
                 }
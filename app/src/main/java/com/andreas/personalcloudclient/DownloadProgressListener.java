@@ -1,5 +1,7 @@
 package com.andreas.personalcloudclient;
 
+// Called on the downloading thread for every read, so it must only record the numbers.
+// TransferProgressDispatcher samples them and turns them into UI updates.
 public interface DownloadProgressListener {
-    void onProgressUpdate(int progress);
+    void onBytesTransferred(long bytesDownloaded, long totalBytes);
 }
@@ -0,0 +1,71 @@
+package com.andreas.personalcloudclient;
+
+import android.util.Log;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Reads a server timestamp into epoch milliseconds, so it can be stored and sorted as a number.
+ * Accepts epoch seconds or milliseconds (as a number or a numeric string) and ISO-8601 text,
+ * with or without an offset; text without an offset is taken as UTC.
+ * Anything unreadable becomes 0 rather than failing the whole listing.
+ */
+public class EpochMillisAdapter extends TypeAdapter<Long> {
+
+    private static final String TAG = "EpochMillisAdapter";
+
+    // Numbers below this are seconds: 10^11 seconds is the year 5138, 10^11 ms is 1973.
+    private static final double SECONDS_LIMIT = 1e11;
+
+    @Override
+    public void write(JsonWriter out, Long value) throws IOException {
+        out.value(value);
+    }
+
+    @Override
+    public Long read(JsonReader in) throws IOException {
+        switch (in.peek()) {
+            case NULL:
+                in.nextNull();
+                return 0L;
+            case NUMBER:
+                return fromNumber(in.nextDouble());
+            default:
+                return parse(in.nextString());
+        }
+    }
+
+    static long parse(String value) {
+        String text = value.trim();
+        try {
+            return fromNumber(Double.parseDouble(text));
+        } catch (NumberFormatException ignored) {
+            // Not a number; try the date formats below.
+        }
+        // "2024-05-01 12:00:00" is common too; ISO wants the 'T'.
+        String iso = text.length() > 10 && text.charAt(10) == ' ' ? text.substring(0, 10) + 'T' + text.substring(11) : text;
+        try {
+            return OffsetDateTime.parse(iso).toInstant().toEpochMilli();
+        } catch (DateTimeParseException ignored) {
+            // No offset; try a local date-time.
+        }
+        try {
+            return LocalDateTime.parse(iso).toInstant(ZoneOffset.UTC).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            Log.w(TAG, "Unreadable timestamp: " + value);
+            return 0L;
+        }
+    }
+
+    private static long fromNumber(double value) {
+        return value < SECONDS_LIMIT ? (long) (value * 1000) : (long) value;
+    }
+}
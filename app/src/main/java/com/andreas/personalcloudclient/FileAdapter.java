@@ -13,22 +13,29 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.bumptech.glide.Glide;
 import java.text.CharacterIterator;
 import java.text.StringCharacterIterator;
-import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 import com.bumptech.glide.load.model.GlideUrl;
 import com.bumptech.glide.load.model.LazyHeaders;
-public class FileAdapter extends RecyclerView.Adapter<FileAdapter.FileViewHolder> {
+import com.bumptech.glide.signature.ObjectKey;
+public class FileAdapter extends RecyclerView.Adapter<FileAdapter.FileViewHolder> implements FilePager.Listener {
 
-    private List<FileMetadata> fileList = new ArrayList<>();
-    private Set<String> selectedItems = new HashSet<>();
+    // Payload for rows whose only change is their selection state; only the background is rebound.
+    private static final Object PAYLOAD_SELECTION = new Object();
+
+    // Only the pages near the screen are in memory; rows of pages still loading show a placeholder.
+    private FilePager pager;
+    // While a search is shown, its results replace the pager; null otherwise.
+    private List<FileMetadata> searchResults;
+    private FilePage searchPage;
+    private SelectionModel selection = SelectionModel.NONE;
     private OnFileClickListener listener;
 
     private final String baseUrl;
 
     public FileAdapter(String baseUrl) {
         this.baseUrl = baseUrl;
+        // No stable ids: a placeholder has no filename to derive one from, and an id that changed when
+        // its page arrived would break RecyclerView's contract. FilePager reports exact moves instead.
     }
 
     public interface OnFileClickListener {
@@ -40,9 +47,67 @@ public class FileAdapter extends RecyclerView.Adapter<FileAdapter.FileViewHolder
         this.listener = listener;
     }
 
-    public void setSelectionMode(Set<String> selectedItems) {
-        this.selectedItems = selectedItems;
-        notifyDataSetChanged();
+    // Rebinds only the loaded rows whose selection state actually changed.
+    // Select-all or invert touch at most the loaded pages, however long the listing is.
+    public void setSelection(SelectionModel selection) {
+        SelectionModel previous = this.selection;
+        this.selection = selection;
+        if (searchPage != null) {
+            for (int row = 0; row < searchPage.size(); row++) {
+                if (selectionChanged(previous, searchPage, row)) {
+                    notifyItemChanged(row, PAYLOAD_SELECTION);
+                }
+            }
+            return;
+        }
+        if (pager == null) return;
+        pager.forEachLoaded((position, page, row) -> {
+            if (selectionChanged(previous, page, row)) {
+                notifyItemChanged(position, PAYLOAD_SELECTION);
+            }
+        });
+    }
+
+    private boolean selectionChanged(SelectionModel previous, FilePage page, int row) {
+        String filename = page.getFilename(row);
+        String fileType = page.getFileType(row);
+        return previous.isSelected(filename, fileType) != selection.isSelected(filename, fileType);
+    }
+
+    /**
+     * Shows search results instead of the full listing, or the listing again for null.
+     * A list that only grew by a page (the same rows followed by new ones) is appended without a rebind.
+     */
+    public void setSearchResults(List<FileMetadata> results) {
+        List<FileMetadata> previous = this.searchResults;
+        this.searchResults = results;
+        this.searchPage = results != null ? FilePage.of(results) : null;
+        if (previous != null && results != null && isAppended(previous, results)) {
+            notifyItemRangeInserted(previous.size(), results.size() - previous.size());
+        } else {
+            notifyDataSetChanged();
+        }
+    }
+
+    private static boolean isAppended(List<FileMetadata> previous, List<FileMetadata> results) {
+        if (results.size() < previous.size()) return false;
+        for (int i = 0; i < previous.size(); i++) {
+            if (previous.get(i) != results.get(i)) return false;
+        }
+        return true;
+    }
+
+    // The page holding a position, or null while it loads; the row in it is rowAt(position).
+    private FilePage pageAt(int position) {
+        return searchPage != null ? searchPage : pager.getPage(position);
+    }
+
+    private int rowAt(int position) {
+        return searchPage != null ? position : FilePager.rowOf(position);
+    }
+
+    private boolean isLoaded(FilePage page, int row) {
+        return page != null && row < page.size();
     }
 
     public static class FileViewHolder extends RecyclerView.ViewHolder {
@@ -68,22 +133,35 @@ public class FileAdapter extends RecyclerView.Adapter<FileAdapter.FileViewHolder
         return new FileViewHolder(view);
     }
 
+    @Override
+    public void onBindViewHolder(@NonNull FileViewHolder holder, int position, @NonNull List<Object> payloads) {
+        FilePage page = pageAt(position);
+        int row = rowAt(position);
+        if (isLoaded(page, row) && !payloads.isEmpty() && payloads.stream().allMatch(p -> p == PAYLOAD_SELECTION)) {
+            bindSelection(holder, page, row);
+            return;
+        }
+        onBindViewHolder(holder, position);
+    }
+
     @Override
     public void onBindViewHolder(@NonNull FileViewHolder holder, int position) {
-        FileMetadata file = fileList.get(position);
+        FilePage page = pageAt(position);
+        int row = rowAt(position);
+        if (!isLoaded(page, row)) {
+            bindPlaceholder(holder);
+            return;
+        }
 
-        holder.fileNameTextView.setText(file.getFilename());
-        holder.fileSizeTextView.setText(formatFileSize(file.getSize()));
+        // Bound straight from the page's columns; no FileMetadata is built for a row on screen.
+        String filename = page.getFilename(row);
+        String fileType = page.getFileType(row);
+        holder.fileNameTextView.setText(filename);
+        holder.fileSizeTextView.setText(formatFileSize(page.getSize(row)));
         holder.optionsButton.setVisibility(View.GONE);
+        bindSelection(holder, page, row);
 
-        if (selectedItems.contains(file.getFilename())) {
-            holder.itemView.setBackgroundColor(ContextCompat.getColor(holder.itemView.getContext(), R.color.selected_item_color));
-        } else {
-            // Use transparent to allow the default selectableItemBackground ripple effect to show
-            holder.itemView.setBackgroundColor(Color.TRANSPARENT);
-        }
-
-        switch (file.getFileType()) {
+        switch (fileType != null ? fileType : "") {
             case "image":
 
                 // 1. Get the SessionManager to retrieve token.
@@ -91,7 +169,7 @@ public class FileAdapter extends RecyclerView.Adapter<FileAdapter.FileViewHolder
 
                 // 2. Create a GlideUrl, which allows to attach headers.
                 GlideUrl glideUrl = new GlideUrl(
-                    baseUrl + "download/" + file.getFilename(),
+                    baseUrl + "download/" + filename,
                     new LazyHeaders.Builder()
                         // Add the Authorization header.
                         .addHeader("Authorization", "Bearer " + sessionManager.getAccessToken())
@@ -101,6 +179,8 @@ public class FileAdapter extends RecyclerView.Adapter<FileAdapter.FileViewHolder
                 // 3. Tell Glide to load the GlideUrl instead of the simple String URL.
                 Glide.with(holder.itemView.getContext())
                     .load(glideUrl) // We now load the object with headers
+                    // A new modified_at means new content behind the same URL.
+                    .signature(new ObjectKey(String.valueOf(page.getModifiedAt(row))))
                     .placeholder(R.drawable.ic_file_generic)
                     .error(R.drawable.ic_file_generic)
                     .into(holder.iconImageView);
@@ -127,26 +207,81 @@ public class FileAdapter extends RecyclerView.Adapter<FileAdapter.FileViewHolder
 
         holder.itemView.setOnClickListener(v -> {
             if (listener != null) {
-                listener.onFileClicked(file);
+                listener.onFileClicked(page.toFileMetadata(row));
             }
         });
 
         holder.itemView.setOnLongClickListener(v -> {
             if (listener != null) {
-                listener.onFileLongClicked(file);
+                listener.onFileLongClicked(page.toFileMetadata(row));
             }
             return true;
         });
     }
 
+    private void bindSelection(FileViewHolder holder, FilePage page, int row) {
+        if (selection.isSelected(page.getFilename(row), page.getFileType(row))) {
+            holder.itemView.setBackgroundColor(ContextCompat.getColor(holder.itemView.getContext(), R.color.selected_item_color));
+        } else {
+            // Use transparent to allow the default selectableItemBackground ripple effect to show
+            holder.itemView.setBackgroundColor(Color.TRANSPARENT);
+        }
+    }
+
+    // Rebound with the real row once its page is loaded.
+    private void bindPlaceholder(FileViewHolder holder) {
+        Glide.with(holder.itemView.getContext()).clear(holder.iconImageView);
+        holder.fileNameTextView.setText("");
+        holder.fileSizeTextView.setText("");
+        holder.optionsButton.setVisibility(View.GONE);
+        holder.iconImageView.setImageResource(R.drawable.ic_file_generic);
+        holder.itemView.setBackgroundColor(Color.TRANSPARENT);
+        holder.itemView.setOnClickListener(null);
+        holder.itemView.setOnLongClickListener(null);
+    }
+
     @Override
     public int getItemCount() {
-        return fileList.size();
+        if (searchPage != null) return searchPage.size();
+        return pager != null ? pager.getCount() : 0;
+    }
+
+    public void setPager(FilePager pager) {
+        this.pager = pager;
+        pager.setListener(this);
+        notifyDataSetChanged();
     }
 
-    public void setFiles(List<FileMetadata> newFiles) {
-        this.fileList.clear();
-        this.fileList.addAll(newFiles);
+    // --- FilePager.Listener ---
+    // Ignored while search results are shown; closing the search rebinds everything anyway.
+
+    @Override
+    public void onInserted(int position, int count) {
+        if (searchResults != null) return;
+        notifyItemRangeInserted(position, count);
+    }
+
+    @Override
+    public void onRemoved(int position, int count) {
+        if (searchResults != null) return;
+        notifyItemRangeRemoved(position, count);
+    }
+
+    @Override
+    public void onMoved(int fromPosition, int toPosition) {
+        if (searchResults != null) return;
+        notifyItemMoved(fromPosition, toPosition);
+    }
+
+    @Override
+    public void onChanged(int position, int count, Object payload) {
+        if (searchResults != null) return;
+        notifyItemRangeChanged(position, count, payload);
+    }
+
+    @Override
+    public void onDataSetChanged() {
+        if (searchResults != null) return;
         notifyDataSetChanged();
     }
 
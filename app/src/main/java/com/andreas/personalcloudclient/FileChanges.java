@@ -0,0 +1,43 @@
+package com.andreas.personalcloudclient;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.util.Collections;
+import java.util.List;
+
+// One page of the server's change feed: everything created, modified or deleted since a cursor.
+public class FileChanges {
+
+    // Pass this as the cursor of the next request.
+    @SerializedName("cursor")
+    private String cursor;
+
+    // Created or modified files, with their current metadata.
+    @SerializedName("changed")
+    private List<FileMetadata> changed;
+
+    // Filenames that no longer exist.
+    @SerializedName("deleted")
+    private List<String> deleted;
+
+    // True if more changes are waiting behind the new cursor.
+    @SerializedName("has_more")
+    private boolean hasMore;
+
+    // --- Getters ---
+    public String getCursor() {
+        return cursor;
+    }
+
+    public List<FileMetadata> getChanged() {
+        return changed != null ? changed : Collections.emptyList();
+    }
+
+    public List<String> getDeleted() {
+        return deleted != null ? deleted : Collections.emptyList();
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+}
@@ -1,25 +1,142 @@
 package com.andreas.personalcloudclient;
 
 import androidx.room.Dao;
-import androidx.room.Insert;
-import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import androidx.room.RawQuery;
+import androidx.room.Transaction;
+import androidx.room.Upsert;
+import androidx.sqlite.db.SupportSQLiteQuery;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Dao
 public interface FileDao {
 
-    @Query("SELECT * FROM files ORDER BY filename ASC")
-    List<FileMetadata> getAllFiles();
+    // Stays below SQLite's limit of 999 bound variables per statement.
+    int MAX_BIND_VARIABLES = 900;
 
-    @Insert(onConflict = OnConflictStrategy.REPLACE)
-    void insertAll(List<FileMetadata> files);
+    @Query("SELECT COUNT(*) FROM files")
+    int getCount();
+
+    // COUNT(*) of a view; the SQL comes from FileQuery.
+    @RawQuery
+    int count(SupportSQLiteQuery query);
+
+    // Keyset page of filenames only, for walking a selection without loading whole rows.
+    @Query("SELECT filename FROM files WHERE filename > :after ORDER BY filename ASC LIMIT :limit")
+    List<String> getFilenamesAfter(String after, int limit);
+
+    // The same, for the files of one type; walks the (file_type, filename) index.
+    @Query("SELECT filename FROM files WHERE file_type = :fileType AND filename > :after ORDER BY filename ASC LIMIT :limit")
+    List<String> getFilenamesOfTypeAfter(String fileType, String after, int limit);
+
+    /**
+     * Updates existing rows in place instead of REPLACE's delete-and-insert. REPLACE deletes without
+     * firing delete triggers and gives the row a new rowid, which would leave stale entries in files_fts.
+     */
+    @Upsert
+    void upsertAll(List<FileMetadata> files);
 
     @Query("DELETE FROM files")
     void deleteAll();
 
+    /**
+     * A page of the files whose name matches a full-text query, in filename order.
+     * The FTS index finds the matches; only the requested page is read into Java.
+     *
+     * @param match An FTS MATCH expression, see {@link FileRepository#toMatchQuery(String)}.
+     * @param after The last filename of the previous page, or "" for the first page.
+     */
+    @Query("SELECT files.* FROM files JOIN files_fts ON files.rowid = files_fts.rowid "
+        + "WHERE files_fts MATCH :match AND files.filename > :after "
+        + "ORDER BY files.filename ASC LIMIT :limit")
+    List<FileMetadata> searchAfter(String match, String after, int limit);
+
     // --- ADD THIS METHOD ---
     @Query("DELETE FROM files WHERE filename = :filename")
     void deleteFileByFilename(String filename);
     // ----------------------
+
+    @Query("DELETE FROM files WHERE filename IN (:filenames)")
+    void deleteFilesByFilename(List<String> filenames);
+
+    // The cached size of a file, or null if it is not in the cache.
+    @Query("SELECT size FROM files WHERE filename = :filename")
+    Long getSize(String filename);
+
+    @Query("SELECT * FROM files WHERE filename IN (:filenames)")
+    List<FileMetadata> getByFilenames(List<String> filenames);
+
+    // True if the server already holds this content under this name, as far as the cache knows.
+    @Query("SELECT EXISTS(SELECT 1 FROM files WHERE filename = :filename AND content_hash = :contentHash)")
+    boolean hasFileWithHash(String filename, String contentHash);
+
+    // Records the hash of a file this client just uploaded, with the size it now has on the server (-1 if unknown).
+    @Query("UPDATE files SET content_hash = :contentHash, size = CASE WHEN :size >= 0 THEN :size ELSE size END "
+        + "WHERE filename = :filename")
+    void setContentHash(String filename, String contentHash, long size);
+
+    /**
+     * Writes only the rows of the batch that are new or whose size, type, modified_at or hash changed,
+     * so an unchanged listing causes no writes and no invalidation at all.
+     * The batch must not be larger than {@link #MAX_BIND_VARIABLES}.
+     *
+     * @return The number of rows written.
+     */
+    @Transaction
+    default int upsertChanged(List<FileMetadata> batch) {
+        List<String> filenames = new ArrayList<>(batch.size());
+        for (FileMetadata file : batch) {
+            filenames.add(file.getFilename());
+        }
+        Map<String, FileMetadata> cached = new HashMap<>();
+        for (FileMetadata file : getByFilenames(filenames)) {
+            cached.put(file.getFilename(), file);
+        }
+
+        List<FileMetadata> changed = new ArrayList<>();
+        for (FileMetadata file : batch) {
+            FileMetadata old = cached.get(file.getFilename());
+            keepKnownHash(file, old);
+            if (old == null || !old.hasSameContentAs(file)) {
+                changed.add(file);
+            }
+        }
+        if (!changed.isEmpty()) {
+            upsertAll(changed);
+        }
+        return changed.size();
+    }
+
+    /**
+     * Applies one page of the change feed. Like a listing batch, only rows that differ from the
+     * cache are written, so changes the cache already has (e.g. ones the full resync that handed
+     * out the cursor already fetched) cost no writes and do not invalidate the list.
+     */
+    @Transaction
+    default void applyChanges(List<FileMetadata> changed, List<String> deleted) {
+        for (int start = 0; start < changed.size(); start += MAX_BIND_VARIABLES) {
+            upsertChanged(changed.subList(start, Math.min(start + MAX_BIND_VARIABLES, changed.size())));
+        }
+        deleteInChunks(deleted);
+    }
+
+    /**
+     * A listing entry without a hash keeps the hash the cache already has, e.g. the one recorded
+     * after an upload, as long as the size still matches. A different size means different content,
+     * so the old hash is dropped rather than claiming content the server no longer holds.
+     */
+    static void keepKnownHash(FileMetadata incoming, FileMetadata cached) {
+        if (incoming.getContentHash() == null && cached != null && cached.getSize() == incoming.getSize()) {
+            incoming.setContentHash(cached.getContentHash());
+        }
+    }
+
+    default void deleteInChunks(List<String> filenames) {
+        for (int start = 0; start < filenames.size(); start += MAX_BIND_VARIABLES) {
+            deleteFilesByFilename(filenames.subList(start, Math.min(start + MAX_BIND_VARIABLES, filenames.size())));
+        }
+    }
 }
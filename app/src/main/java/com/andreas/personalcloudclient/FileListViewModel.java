@@ -7,49 +7,84 @@ import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
 public class FileListViewModel extends AndroidViewModel {
 
     private final FileRepository fileRepository;
 
-    private final MutableLiveData<List<FileMetadata>> _fileList = new MutableLiveData<>();
-    public final LiveData<List<FileMetadata>> fileList = _fileList;
+    // A paged window over the cached listing; it follows the database by itself.
+    private final FilePager filePager;
+    public final LiveData<Integer> fileCount;
 
     private final MutableLiveData<Boolean> _isLoading = new MutableLiveData<>();
     public final LiveData<Boolean> isLoading = _isLoading;
 
+    // Files received so far by a running full sync, or null when none is running.
+    private final MutableLiveData<Integer> _syncProgress = new MutableLiveData<>();
+    public final LiveData<Integer> syncProgress = _syncProgress;
+
     private final MutableLiveData<String> _toastMessage = new MutableLiveData<>();
     public final LiveData<String> toastMessage = _toastMessage;
 
-    private final MutableLiveData<Set<String>> _selectedItems = new MutableLiveData<>(new HashSet<>());
-    public final LiveData<Set<String>> selectedItems = _selectedItems;
+    // "These files" or "all files except these"; never a copy of the listing.
+    private final MutableLiveData<SelectionModel> _selection = new MutableLiveData<>(SelectionModel.NONE);
+    public final LiveData<SelectionModel> selection = _selection;
 
     private final MutableLiveData<Boolean> _isSelectionModeActive = new MutableLiveData<>(false);
     public final LiveData<Boolean> isSelectionModeActive = _isSelectionModeActive;
 
+    // The files matching the search box, page by page; null while not searching.
+    private final MutableLiveData<List<FileMetadata>> _searchResults = new MutableLiveData<>();
+    public final LiveData<List<FileMetadata>> searchResults = _searchResults;
+    private String searchText;
+    private boolean searchLoading = false;
+    private boolean searchExhausted = false;
+
+    // Combined progress of every queued and running upload/download.
+    public final LiveData<TransferScheduler.AggregateProgress> transferProgress = TransferScheduler.getInstance().progress;
+
     public FileListViewModel(@NonNull Application application) {
         super(application);
-        this.fileRepository = new FileRepository(application);
+        this.fileRepository = FileRepository.getInstance(application);
+        this.filePager = fileRepository.createFilePager();
+        this.fileCount = filePager.itemCount;
+    }
+
+    public FilePager getFilePager() {
+        return filePager;
+    }
+
+    @Override
+    protected void onCleared() {
+        filePager.close();
     }
 
+    // Shows the list; a recently validated cache is used without asking the server.
     public void loadFileList() {
+        loadFileList(false);
+    }
+
+    // Swipe-to-refresh: always revalidates with the server.
+    public void refreshFileList() {
+        loadFileList(true);
+    }
+
+    private void loadFileList(boolean forceRevalidate) {
         _isLoading.setValue(true);
 
-        fileRepository.getFiles(new FileRepository.GetFilesCallback() {
+        // The pager shows the cache right away and picks up every page the sync writes.
+        fileRepository.getFiles(forceRevalidate, new FileRepository.GetFilesCallback() {
             @Override
-            public void onCacheLoaded(List<FileMetadata> cachedFiles) {
-                _fileList.setValue(cachedFiles);
+            public void onSyncProgress(int filesIngested) {
+                _syncProgress.setValue(filesIngested);
             }
 
             @Override
-            public void onNetworkResult(List<FileMetadata> networkFiles, String error) {
+            public void onSyncFinished(String error) {
                 _isLoading.setValue(false);
-                if (networkFiles != null) {
-                    _fileList.setValue(networkFiles);
-                }
+                _syncProgress.setValue(null);
                 if (error != null) {
                     _toastMessage.setValue(error);
                 }
@@ -57,39 +92,33 @@ public class FileListViewModel extends AndroidViewModel {
         });
     }
 
+    // Deleted in chunks as the selection is streamed from the cache; the list drops each chunk in place.
     public void deleteSelectedFiles() {
-        Set<String> filesToDelete = _selectedItems.getValue();
-        if (filesToDelete == null || filesToDelete.isEmpty()) return;
+        SelectionModel selected = _selection.getValue();
+        if (selected == null || selected.isEmpty(getFileCount())) return;
 
         _isLoading.setValue(true);
-        List<String> filesToDeleteList = new ArrayList<>(filesToDelete);
-
-        final int totalFiles = filesToDeleteList.size();
-        final int[] deletedCount = {0};
-
-        for (String filename : filesToDeleteList) {
-            fileRepository.deleteFile(filename, new FileRepository.RepositoryCallback<String>() {
-                @Override
-                public void onSuccess(String result) {
-                    deletedCount[0]++;
-                    if (deletedCount[0] == totalFiles) {
-                        _toastMessage.setValue(totalFiles + " file(s) deleted");
-                        clearSelection();
-                        loadFileList();
-                    }
+        fileRepository.deleteFiles(selected, new FileRepository.BatchDeleteCallback() {
+            @Override
+            public void onComplete(int deleted, Map<String, String> failures) {
+                _isLoading.setValue(false);
+                clearSelection();
+                if (failures.isEmpty()) {
+                    _toastMessage.setValue(deleted + " file(s) deleted");
+                } else if (failures.size() == 1) {
+                    Map.Entry<String, String> failure = failures.entrySet().iterator().next();
+                    _toastMessage.setValue(deleted + " file(s) deleted. Error deleting " + failure.getKey() + ": " + failure.getValue());
+                } else {
+                    _toastMessage.setValue(deleted + " file(s) deleted, " + failures.size() + " failed");
                 }
+            }
 
-                @Override
-                public void onError(String message) {
-                    deletedCount[0]++;
-                    _toastMessage.setValue("Error deleting " + filename + ": " + message);
-                    if (deletedCount[0] == totalFiles) {
-                        clearSelection();
-                        loadFileList();
-                    }
-                }
-            });
-        }
+            @Override
+            public void onError(String message) {
+                _isLoading.setValue(false);
+                _toastMessage.setValue(message);
+            }
+        });
     }
 
     public void uploadFile(Uri fileUri) {
@@ -109,6 +138,31 @@ public class FileListViewModel extends AndroidViewModel {
         });
     }
 
+    // Small files go up in bundles; one summary message at the end instead of one per file.
+    public void uploadFiles(List<Uri> fileUris) {
+        _isLoading.setValue(true);
+        fileRepository.uploadFiles(fileUris, new FileRepository.BundledUploadCallback() {
+            @Override
+            public void onComplete(int uploaded, Map<String, String> failures) {
+                if (failures.isEmpty()) {
+                    _toastMessage.setValue(uploaded + " file(s) uploaded");
+                } else if (failures.size() == 1) {
+                    Map.Entry<String, String> failure = failures.entrySet().iterator().next();
+                    _toastMessage.setValue(uploaded + " file(s) uploaded. Error uploading " + failure.getKey() + ": " + failure.getValue());
+                } else {
+                    _toastMessage.setValue(uploaded + " file(s) uploaded, " + failures.size() + " failed");
+                }
+                loadFileList();
+            }
+
+            @Override
+            public void onError(String message) {
+                _toastMessage.setValue(message);
+                _isLoading.setValue(false);
+            }
+        });
+    }
+
     public void downloadFile(String filename) {
         fileRepository.downloadFile(filename, new FileRepository.RepositoryCallback<String>() {
             @Override
@@ -123,22 +177,155 @@ public class FileListViewModel extends AndroidViewModel {
         });
     }
 
-    public void toggleSelection(String filename) {
-        Set<String> currentSelection = _selectedItems.getValue();
-        if (currentSelection == null) currentSelection = new HashSet<>();
+    /**
+     * Downloads the selection into Downloads. Several files come as one streamed archive
+     * that is unpacked while it arrives; a single file, or a server without archives,
+     * gets one request per file.
+     */
+    public void downloadSelectedFiles() {
+        SelectionModel selected = _selection.getValue();
+        if (selected == null || selected.isEmpty(getFileCount())) return;
 
-        if (currentSelection.contains(filename)) {
-            currentSelection.remove(filename);
+        if (selected.count(getFileCount()) == 1) {
+            downloadOneByOne(selected);
         } else {
-            currentSelection.add(filename);
+            downloadArchive(selected, true);
+        }
+    }
+
+    // Saves the selection as a single .zip in Downloads.
+    public void downloadSelectedAsZip() {
+        SelectionModel selected = _selection.getValue();
+        if (selected == null || selected.isEmpty(getFileCount())) return;
+        downloadArchive(selected, false);
+    }
+
+    private void downloadArchive(SelectionModel selected, boolean expand) {
+        fileRepository.downloadArchive(selected, expand, new FileRepository.ArchiveDownloadCallback() {
+            @Override
+            public void onSuccess(String message) {
+                _toastMessage.setValue(message);
+            }
+
+            @Override
+            public void onUnsupported() {
+                if (expand) {
+                    downloadOneByOne(selected);
+                } else {
+                    _toastMessage.setValue("The server cannot create ZIP archives.");
+                }
+            }
+
+            @Override
+            public void onError(String message) {
+                _toastMessage.setValue(message);
+            }
+        });
+    }
+
+    // Queues every selected file; the scheduler bounds how many run at once.
+    private void downloadOneByOne(SelectionModel selected) {
+        final int[] finishedCount = {0};
+        final int[] failedCount = {0};
+        final int[] totalFiles = {-1}; // Known once the selection has been walked.
+
+        fileRepository.forEachSelected(selected, new FileRepository.SelectionBatchCallback() {
+            @Override
+            public void onBatch(List<String> filenames) {
+                for (String filename : filenames) {
+                    fileRepository.downloadFile(filename, new FileRepository.RepositoryCallback<String>() {
+                        @Override
+                        public void onSuccess(String result) {
+                            finishedCount[0]++;
+                            onDownloadFinished();
+                        }
+
+                        @Override
+                        public void onError(String message) {
+                            finishedCount[0]++;
+                            failedCount[0]++;
+                            onDownloadFinished();
+                        }
+                    });
+                }
+            }
+
+            @Override
+            public void onComplete(int total) {
+                totalFiles[0] = total;
+                onDownloadFinished();
+            }
+
+            // One summary message instead of one toast per file.
+            private void onDownloadFinished() {
+                if (totalFiles[0] <= 0 || finishedCount[0] != totalFiles[0]) return;
+                int downloaded = totalFiles[0] - failedCount[0];
+                _toastMessage.setValue(downloaded + " file(s) downloaded"
+                    + (failedCount[0] > 0 ? ", " + failedCount[0] + " failed" : ""));
+            }
+        });
+    }
+
+    // Search-as-you-type; the repository debounces, so this can be called on every keystroke.
+    public void setSearchQuery(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            searchText = null;
+            fileRepository.cancelSearch();
+            _searchResults.setValue(null);
+            return;
         }
+        searchText = text;
+        searchLoading = true;
+        searchExhausted = false;
+        fileRepository.searchFiles(text, null, searchCallback(false));
+    }
+
+    // Fetches the next page of results once the list is scrolled near its end.
+    public void loadMoreSearchResults() {
+        List<FileMetadata> current = _searchResults.getValue();
+        if (searchText == null || searchLoading || searchExhausted || current == null || current.isEmpty()) return;
+        searchLoading = true;
+        fileRepository.searchFiles(searchText, current.get(current.size() - 1).getFilename(), searchCallback(true));
+    }
+
+    private FileRepository.RepositoryCallback<List<FileMetadata>> searchCallback(boolean append) {
+        return new FileRepository.RepositoryCallback<List<FileMetadata>>() {
+            @Override
+            public void onSuccess(List<FileMetadata> page) {
+                searchLoading = false;
+                searchExhausted = page.size() < FileRepository.SEARCH_PAGE_SIZE;
+                List<FileMetadata> current = _searchResults.getValue();
+                if (append && current != null) {
+                    List<FileMetadata> combined = new ArrayList<>(current);
+                    combined.addAll(page);
+                    _searchResults.setValue(combined);
+                } else {
+                    _searchResults.setValue(page);
+                }
+            }
 
-        _selectedItems.setValue(currentSelection);
-        _isSelectionModeActive.setValue(!currentSelection.isEmpty());
+            @Override
+            public void onError(String message) {
+                searchLoading = false;
+                _toastMessage.setValue(message);
+            }
+        };
+    }
+
+    public void pauseTransfers() {
+        TransferScheduler.getInstance().pauseAll();
+    }
+
+    public void resumeTransfers() {
+        TransferScheduler.getInstance().resumeAll();
+    }
+
+    public void toggleSelection(String filename) {
+        setSelection(currentSelection().toggle(filename));
     }
 
     public void clearSelection() {
-        _selectedItems.setValue(new HashSet<>());
+        _selection.setValue(SelectionModel.NONE);
         _isSelectionModeActive.setValue(false);
     }
 
@@ -146,19 +333,45 @@ public class FileListViewModel extends AndroidViewModel {
         _toastMessage.setValue(null);
     }
 
+    // Constant time: the selection only records that everything is selected.
+    // With no files this selects nothing, which ends the action mode again.
     public void selectAllFiles() {
-        List<FileMetadata> currentFiles = _fileList.getValue();
-        if (currentFiles == null || currentFiles.isEmpty()) {
-            return; // Nothing to select
-        }
+        setSelection(SelectionModel.all(filePager.getQuery().getFileType()));
+    }
 
-        Set<String> allFilenames = new HashSet<>();
-        for (FileMetadata file : currentFiles) {
-            allFilenames.add(file.getFilename());
-        }
+    public void invertSelection() {
+        setSelection(currentSelection().invert(filePager.getQuery().getFileType()));
+    }
+
+    // --- Sort and filter ---
+
+    public FileQuery getFileQuery() {
+        return filePager.getQuery();
+    }
+
+    public void setSortOrder(FileQuery.Sort sort) {
+        filePager.setQuery(filePager.getQuery().withSort(sort));
+    }
+
+    // Shows only files of one type, or all files for null. A selection made in another view is dropped.
+    public void setTypeFilter(String fileType) {
+        clearSelection();
+        filePager.setQuery(filePager.getQuery().withFileType(fileType));
+    }
+
+    private SelectionModel currentSelection() {
+        SelectionModel current = _selection.getValue();
+        return current != null ? current : SelectionModel.NONE;
+    }
+
+    private void setSelection(SelectionModel selected) {
+        _selection.setValue(selected);
+        _isSelectionModeActive.setValue(!selected.isEmpty(getFileCount()));
+    }
 
-        _selectedItems.setValue(allFilenames);
-        _isSelectionModeActive.setValue(true);
+    public int getFileCount() {
+        Integer count = fileCount.getValue();
+        return count != null ? count : 0;
     }
 
     public void setLoadingState(boolean isLoading) {
@@ -3,11 +3,25 @@ package com.andreas.personalcloudclient;
 import androidx.annotation.NonNull; // <-- NEW
 import androidx.room.ColumnInfo; // <-- NEW
 import androidx.room.Entity;     // <-- NEW
+import androidx.room.Index;
 import androidx.room.PrimaryKey; // <-- NEW
+import com.google.gson.annotations.JsonAdapter;
 import com.google.gson.annotations.SerializedName;
 
+import java.util.Objects;
+
 // @Entity tells Room to create a database table for this object.
-@Entity(tableName = "files")
+// Every sorted or filtered view of the list has an index that ends in filename, so the
+// filename can break ties and serve as the keyset of the next page. A filtered view starts
+// its index with file_type, so it is read in order instead of sorted.
+@Entity(tableName = "files", indices = {
+    @Index(value = {"file_type", "filename"}),
+    @Index(value = {"modified_at", "filename"}),
+    @Index(value = {"size", "filename"}),
+    @Index(value = {"file_type", "modified_at", "filename"}),
+    @Index(value = {"file_type", "size", "filename"}),
+    @Index(value = {"content_hash"})
+})
 public class FileMetadata {
 
     // @PrimaryKey defines the unique ID for each row in the table.
@@ -25,9 +39,17 @@ public class FileMetadata {
     @SerializedName("size")
     private long size;
 
+    // Epoch milliseconds, 0 if unknown. The server's format is normalized when the JSON is read.
     @ColumnInfo(name = "modified_at")
     @SerializedName("modified_at")
-    private String modifiedAt;
+    @JsonAdapter(EpochMillisAdapter.class)
+    private long modifiedAt;
+
+    // Lowercase hex SHA-256 of the content, or null if the server has not reported it.
+    // Lets an upload tell that the same content is already stored without asking the server.
+    @ColumnInfo(name = "content_hash")
+    @SerializedName("sha256")
+    private String contentHash;
 
     // --- Room needs an empty constructor ---
     public FileMetadata() {}
@@ -43,6 +65,18 @@ public class FileMetadata {
     public long getSize() { return size; }
     public void setSize(long size) { this.size = size; }
 
-    public String getModifiedAt() { return modifiedAt; }
-    public void setModifiedAt(String modifiedAt) { this.modifiedAt = modifiedAt; }
+    public long getModifiedAt() { return modifiedAt; }
+    public void setModifiedAt(long modifiedAt) { this.modifiedAt = modifiedAt; }
+
+    public String getContentHash() { return contentHash; }
+    public void setContentHash(String contentHash) { this.contentHash = contentHash; }
+
+    // True if the other row describes the same file with the same metadata, so it need not be rewritten.
+    public boolean hasSameContentAs(FileMetadata other) {
+        return filename.equals(other.filename)
+            && size == other.size
+            && Objects.equals(fileType, other.fileType)
+            && modifiedAt == other.modifiedAt
+            && Objects.equals(contentHash, other.contentHash);
+    }
 }
@@ -0,0 +1,185 @@
+package com.andreas.personalcloudclient;
+
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A run of rows of the file listing, stored column by column.
+ * Sizes and timestamps are primitive arrays and the file type is a small code into a shared,
+ * deduplicated type table. Filenames live in the page's name table: one char array holding
+ * every name back to back, plus the end offset of each. A page therefore costs a handful of
+ * arrays however many rows it has, and reading it from a Cursor allocates nothing per row.
+ * A filename String is only made when a row is bound ({@link #getFilename(int)}); comparisons
+ * and ids work on the name table directly. {@link #toFileMetadata(int)} makes a FileMetadata
+ * only where an API needs one. Pages are immutable once built.
+ */
+public final class FilePage {
+
+    public static final FilePage EMPTY = new Builder(0).build();
+
+    // --- file_type codes ---
+    // Every file_type value seen so far; rows store their index. Code 0 is "no type".
+    private static final List<String> typeNames = new ArrayList<>();
+    private static final Map<String, Short> typeCodes = new HashMap<>();
+
+    static {
+        typeNames.add(null);
+    }
+
+    private static synchronized short codeOf(String fileType) {
+        if (fileType == null) return 0;
+        Short code = typeCodes.get(fileType);
+        if (code == null) {
+            code = (short) typeNames.size();
+            typeNames.add(fileType);
+            typeCodes.put(fileType, code);
+        }
+        return code;
+    }
+
+    private static synchronized String typeOf(short code) {
+        return typeNames.get(code);
+    }
+
+    // The name table: row i's filename is names[nameEnds[i - 1] .. nameEnds[i]).
+    private final char[] names;
+    private final int[] nameEnds;
+    private final short[] types;
+    private final long[] sizes;
+    private final long[] modifiedAt;
+    private final int size;
+
+    private FilePage(char[] names, int[] nameEnds, short[] types, long[] sizes, long[] modifiedAt, int size) {
+        this.names = names;
+        this.nameEnds = nameEnds;
+        this.types = types;
+        this.sizes = sizes;
+        this.modifiedAt = modifiedAt;
+        this.size = size;
+    }
+
+    // Reads every row of a "SELECT * FROM files ..." cursor. The caller closes the cursor.
+    public static FilePage read(Cursor cursor) {
+        int filenameColumn = cursor.getColumnIndexOrThrow("filename");
+        int typeColumn = cursor.getColumnIndexOrThrow("file_type");
+        int sizeColumn = cursor.getColumnIndexOrThrow("size");
+        int modifiedAtColumn = cursor.getColumnIndexOrThrow("modified_at");
+        Builder builder = new Builder(cursor.getCount());
+        // Filenames are copied into the name table through one reused buffer, not as Strings.
+        CharArrayBuffer filename = new CharArrayBuffer(64);
+        while (cursor.moveToNext()) {
+            cursor.copyStringToBuffer(filenameColumn, filename);
+            builder.add(filename.data, 0, filename.sizeCopied,
+                codeOf(cursor.isNull(typeColumn) ? null : cursor.getString(typeColumn)),
+                cursor.getLong(sizeColumn),
+                cursor.getLong(modifiedAtColumn));
+        }
+        return builder.build();
+    }
+
+    public static FilePage of(List<FileMetadata> files) {
+        Builder builder = new Builder(files.size());
+        for (FileMetadata file : files) {
+            char[] filename = file.getFilename().toCharArray();
+            builder.add(filename, 0, filename.length, codeOf(file.getFileType()), file.getSize(), file.getModifiedAt());
+        }
+        return builder.build();
+    }
+
+    public int size() { return size; }
+    public String getFilename(int row) { return new String(names, nameStart(row), nameEnds[row] - nameStart(row)); }
+    public String getFileType(int row) { return typeOf(types[row]); }
+    public long getSize(int row) { return sizes[row]; }
+    public long getModifiedAt(int row) { return modifiedAt[row]; }
+
+    private int nameStart(int row) {
+        return row == 0 ? 0 : nameEnds[row - 1];
+    }
+
+    // Compares filenames in the name tables, without making Strings.
+    public boolean hasSameFilename(int row, FilePage other, int otherRow) {
+        int start = nameStart(row);
+        int length = nameEnds[row] - start;
+        int otherStart = other.nameStart(otherRow);
+        if (other.nameEnds[otherRow] - otherStart != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (names[start + i] != other.names[otherStart + i]) return false;
+        }
+        return true;
+    }
+
+    // For APIs that take a whole file, like click listeners and keyset anchors.
+    public FileMetadata toFileMetadata(int row) {
+        FileMetadata file = new FileMetadata();
+        file.setFilename(getFilename(row));
+        file.setFileType(getFileType(row));
+        file.setSize(sizes[row]);
+        file.setModifiedAt(modifiedAt[row]);
+        return file;
+    }
+
+    // Same check as FileMetadata.hasSameContentAs, without materializing either row.
+    public boolean hasSameContent(int row, FilePage other, int otherRow) {
+        return types[row] == other.types[otherRow]
+            && sizes[row] == other.sizes[otherRow]
+            && modifiedAt[row] == other.modifiedAt[otherRow]
+            && hasSameFilename(row, other, otherRow);
+    }
+
+    // Collects rows into a page, growing the columns as needed.
+    public static final class Builder {
+        private char[] names;
+        private int namesLength = 0;
+        private int[] nameEnds;
+        private short[] types;
+        private long[] sizes;
+        private long[] modifiedAt;
+        private int size = 0;
+
+        public Builder(int capacity) {
+            // Room for names of a typical length; the table grows if they are longer.
+            names = new char[capacity * 24];
+            nameEnds = new int[capacity];
+            types = new short[capacity];
+            sizes = new long[capacity];
+            modifiedAt = new long[capacity];
+        }
+
+        // Copies one row of another page.
+        public Builder add(FilePage page, int row) {
+            int start = page.nameStart(row);
+            return add(page.names, start, page.nameEnds[row] - start, page.types[row], page.sizes[row], page.modifiedAt[row]);
+        }
+
+        private Builder add(char[] filename, int offset, int length, short type, long fileSize, long modified) {
+            if (size == nameEnds.length) {
+                int capacity = Math.max(16, size * 2);
+                nameEnds = Arrays.copyOf(nameEnds, capacity);
+                types = Arrays.copyOf(types, capacity);
+                sizes = Arrays.copyOf(sizes, capacity);
+                modifiedAt = Arrays.copyOf(modifiedAt, capacity);
+            }
+            if (namesLength + length > names.length) {
+                names = Arrays.copyOf(names, Math.max(namesLength + length, names.length * 2));
+            }
+            System.arraycopy(filename, offset, names, namesLength, length);
+            namesLength += length;
+            nameEnds[size] = namesLength;
+            types[size] = type;
+            sizes[size] = fileSize;
+            modifiedAt[size] = modified;
+            size++;
+            return this;
+        }
+
+        public FilePage build() {
+            return new FilePage(names, nameEnds, types, sizes, modifiedAt, size);
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package com.andreas.personalcloudclient;
+
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.SparseArray;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
+import androidx.room.InvalidationTracker;
+import androidx.sqlite.db.SupportSQLiteQuery;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A window over the cached file listing, for the RecyclerView.
+ * Only the pages around what is on screen are held in memory; the rest stays in Room.
+ * The listing is shown in the order and with the filter of a {@link FileQuery}.
+ * Pages are read with keyset queries (rows after the last row of the previous page),
+ * which stay fast however deep the user scrolls. Pages further away than any known key
+ * (a fast scroll) fall back to an OFFSET query once. Reloads after a change find the window
+ * again by the keyset of its first row and never use OFFSET.
+ * Pages are held as columnar {@link FilePage}s read straight from the cursor, so scrolling
+ * allocates no per-row objects besides the filenames.
+ * The pager reloads itself whenever the files table changes.
+ * All public methods must be called on the main thread.
+ */
+public class FilePager {
+
+    public static final int PAGE_SIZE = 100;
+    // Enough pages for a fling in both directions; the least recently used page is dropped first.
+    private static final int MAX_CACHED_PAGES = 8;
+
+    // Receives fine-grained updates; the adapter forwards them to RecyclerView's notifyItem* calls.
+    public interface Listener extends ListUpdateCallback {
+        void onDataSetChanged();
+    }
+
+    private final AppDatabase database;
+    private final FileDao fileDao;
+    private final ExecutorService loader = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final Map<Integer, FilePage> pages = new LinkedHashMap<Integer, FilePage>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, FilePage> eldest) {
+            return size() > MAX_CACHED_PAGES;
+        }
+    };
+    // The last row of every page seen so far: the keyset anchor of the page after it.
+    private final SparseArray<FileMetadata> lastRows = new SparseArray<>();
+    private final Set<Integer> loading = new HashSet<>();
+    // Bumped on every reload, so pages read before a change are not mixed with newer ones.
+    private int generation = 0;
+    private int count = 0;
+    private FileQuery query = FileQuery.DEFAULT;
+    private Listener listener;
+
+    private final MutableLiveData<Integer> _count = new MutableLiveData<>();
+    public final LiveData<Integer> itemCount = _count;
+
+    private final InvalidationTracker.Observer tableObserver = new InvalidationTracker.Observer("files") {
+        @Override
+        public void onInvalidated(@NonNull Set<String> tables) {
+            mainHandler.post(FilePager.this::reload);
+        }
+    };
+
+    public FilePager(AppDatabase database) {
+        this.database = database;
+        this.fileDao = database.fileDao();
+        database.getInvalidationTracker().addObserver(tableObserver);
+        reload();
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public FileQuery getQuery() {
+        return query;
+    }
+
+    // Shows the listing in another order or with another filter, starting from the top.
+    public void setQuery(FileQuery query) {
+        this.query = query;
+        pages.clear();
+        lastRows.clear();
+        reload();
+    }
+
+    /**
+     * Returns the page holding the position, or null while it is still loading; the row within
+     * it is {@link #rowOf(int)}. The listener is told when the page arrives.
+     */
+    public FilePage getPage(int position) {
+        int pageIndex = position / PAGE_SIZE;
+        FilePage page = pages.get(pageIndex);
+        if (page == null) {
+            loadPage(pageIndex);
+        }
+        return page;
+    }
+
+    public static int rowOf(int position) {
+        return position % PAGE_SIZE;
+    }
+
+    // Stops watching the database. The pager cannot be used afterwards.
+    public void close() {
+        database.getInvalidationTracker().removeObserver(tableObserver);
+        loader.shutdown();
+    }
+
+    private void loadPage(int pageIndex) {
+        if (!loading.add(pageIndex)) return;
+        final int requestedGeneration = generation;
+        final FileQuery pageQuery = query;
+        final FileMetadata after = pageIndex == 0 ? null : lastRows.get(pageIndex - 1);
+        loader.execute(() -> {
+            FilePage page = readPage(pageIndex == 0 || after != null
+                ? pageQuery.pageAfter(after, PAGE_SIZE)
+                : pageQuery.pageAt(pageIndex * PAGE_SIZE, PAGE_SIZE));
+            mainHandler.post(() -> {
+                loading.remove(pageIndex);
+                if (requestedGeneration != generation) return;
+                putPage(pageIndex, page);
+                int start = pageIndex * PAGE_SIZE;
+                int size = Math.min(PAGE_SIZE, count - start);
+                if (listener != null && size > 0) {
+                    listener.onChanged(start, size, null);
+                }
+            });
+        });
+    }
+
+    /**
+     * Re-reads the table after it changed and tells the listener exactly what moved.
+     * The loaded window is located again by its first row, so rows inserted or deleted
+     * above it shift it instead of replacing it, and the window itself is diffed with DiffUtil
+     * off the main thread. A refresh that changed nothing on screen therefore rebinds nothing.
+     * The window's pages are read with keyset queries on both sides of that row, and the total
+     * comes from the per-type counts the database keeps up to date on every write, so a reload
+     * costs the same however large the listing is, apart from finding the window's position.
+     */
+    private void reload() {
+        final int requestedGeneration = ++generation;
+        final FileQuery reloadQuery = query;
+        loading.clear();
+        final int oldCount = count;
+        final int firstPage = firstPageOfWindow();
+        final FilePage oldWindow = window(firstPage);
+        final int oldStart = firstPage * PAGE_SIZE;
+
+        loader.execute(() -> {
+            Map<Integer, FilePage> fresh = new LinkedHashMap<>();
+            int[] result = new int[2];
+            // One read transaction, so the count and the pages describe the same table.
+            database.runInTransaction(() -> {
+                result[0] = fileDao.count(reloadQuery.count());
+                if (oldWindow.size() == 0) {
+                    fresh.put(0, readPage(reloadQuery.pageAfter(null, PAGE_SIZE)));
+                    return;
+                }
+                FileMetadata anchor = oldWindow.toFileMetadata(0);
+                int start = fileDao.count(reloadQuery.countBefore(anchor));
+                result[1] = start;
+                // Whole pages: the rows of the first page before the anchor, then the anchor onwards.
+                int startPage = start / PAGE_SIZE;
+                int endPage = (start + oldWindow.size() - 1) / PAGE_SIZE;
+                int rowsBefore = start - startPage * PAGE_SIZE;
+                FilePage before = rowsBefore == 0 ? FilePage.EMPTY : readPage(reloadQuery.pageBefore(anchor, rowsBefore));
+                FilePage from = readPage(reloadQuery.pageFrom(anchor, (endPage + 1) * PAGE_SIZE - start));
+                splitIntoPages(fresh, startPage, before, from);
+            });
+            final int newCount = result[0];
+            final int newStart = result[1];
+            final FilePage newWindow = slice(fresh, newStart, Math.min(oldWindow.size(), newCount - newStart));
+            final DiffUtil.DiffResult diff = oldWindow.size() == 0 ? null
+                : DiffUtil.calculateDiff(new WindowDiff(oldWindow, newWindow), false);
+
+            mainHandler.post(() -> {
+                if (requestedGeneration != generation) return;
+                pages.clear();
+                lastRows.clear();
+                for (Map.Entry<Integer, FilePage> entry : fresh.entrySet()) {
+                    putPage(entry.getKey(), entry.getValue());
+                }
+                count = newCount;
+                _count.setValue(newCount);
+                if (listener == null) return;
+                if (diff == null) {
+                    listener.onDataSetChanged();
+                    return;
+                }
+
+                // 1. Rows appeared or vanished above the window: move the window, keep its rows.
+                if (newStart > oldStart) {
+                    listener.onInserted(oldStart, newStart - oldStart);
+                } else if (newStart < oldStart) {
+                    listener.onRemoved(newStart, oldStart - newStart);
+                }
+                // 2. Changes inside the window.
+                diff.dispatchUpdatesTo(new OffsetCallback(listener, newStart));
+                // 3. Whatever is left is a change in the number of rows below the window.
+                int windowEnd = newStart + newWindow.size();
+                int expected = oldCount + (newStart - oldStart) + (newWindow.size() - oldWindow.size());
+                if (newCount > expected) {
+                    listener.onInserted(windowEnd, newCount - expected);
+                } else if (newCount < expected) {
+                    listener.onRemoved(windowEnd, expected - newCount);
+                }
+                // 4. Rows off screen may hold different files now; they are not bound, so this is cheap.
+                if (newStart > 0) {
+                    listener.onChanged(0, newStart, null);
+                }
+                if (newCount > windowEnd) {
+                    listener.onChanged(windowEnd, newCount - windowEnd, null);
+                }
+            });
+        });
+    }
+
+    // The first page of the contiguous run of loaded pages that holds the most recently used one.
+    private int firstPageOfWindow() {
+        int newest = -1;
+        for (int pageIndex : pages.keySet()) {
+            newest = pageIndex;
+        }
+        if (newest < 0) return 0;
+        int first = newest;
+        while (pages.containsKey(first - 1)) {
+            first--;
+        }
+        return first;
+    }
+
+    // Cuts the rows before the anchor (nearest first) and the rows from it into pages from firstPage on.
+    private static void splitIntoPages(Map<Integer, FilePage> pages, int firstPage, FilePage before, FilePage from) {
+        int total = before.size() + from.size();
+        int pageIndex = firstPage;
+        FilePage.Builder rows = new FilePage.Builder(PAGE_SIZE);
+        int filled = 0;
+        for (int i = 0; i < total; i++) {
+            if (i < before.size()) {
+                rows.add(before, before.size() - 1 - i);
+            } else {
+                rows.add(from, i - before.size());
+            }
+            if (++filled == PAGE_SIZE) {
+                pages.put(pageIndex++, rows.build());
+                rows = new FilePage.Builder(PAGE_SIZE);
+                filled = 0;
+            }
+        }
+        if (filled > 0 || pages.isEmpty()) {
+            pages.put(pageIndex, rows.build());
+        }
+    }
+
+    // Runs on the loader thread; the cursor is closed before the page is handed over.
+    private FilePage readPage(SupportSQLiteQuery pageQuery) {
+        try (Cursor cursor = database.query(pageQuery)) {
+            return FilePage.read(cursor);
+        }
+    }
+
+    // The rows of the contiguous run of loaded pages starting at firstPage.
+    private FilePage window(int firstPage) {
+        FilePage.Builder rows = new FilePage.Builder(PAGE_SIZE);
+        for (int pageIndex = firstPage; pages.containsKey(pageIndex); pageIndex++) {
+            FilePage page = pages.get(pageIndex);
+            for (int row = 0; row < page.size(); row++) {
+                rows.add(page, row);
+            }
+        }
+        return rows.build();
+    }
+
+    private static FilePage slice(Map<Integer, FilePage> pages, int start, int length) {
+        FilePage.Builder rows = new FilePage.Builder(Math.max(length, 0));
+        for (int position = start; position < start + length; position++) {
+            FilePage page = pages.get(position / PAGE_SIZE);
+            if (page == null || rowOf(position) >= page.size()) break;
+            rows.add(page, rowOf(position));
+        }
+        return rows.build();
+    }
+
+    // Rows are the same file if the filename matches, and unchanged if their metadata matches too.
+    private static class WindowDiff extends DiffUtil.Callback {
+        private final FilePage oldRows;
+        private final FilePage newRows;
+
+        WindowDiff(FilePage oldRows, FilePage newRows) {
+            this.oldRows = oldRows;
+            this.newRows = newRows;
+        }
+
+        @Override
+        public int getOldListSize() { return oldRows.size(); }
+
+        @Override
+        public int getNewListSize() { return newRows.size(); }
+
+        @Override
+        public boolean areItemsTheSame(int oldPosition, int newPosition) {
+            return oldRows.hasSameFilename(oldPosition, newRows, newPosition);
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldPosition, int newPosition) {
+            return oldRows.hasSameContent(oldPosition, newRows, newPosition);
+        }
+    }
+
+    // Shifts the window-relative positions of a DiffResult to adapter positions.
+    private static class OffsetCallback implements ListUpdateCallback {
+        private final ListUpdateCallback target;
+        private final int offset;
+
+        OffsetCallback(ListUpdateCallback target, int offset) {
+            this.target = target;
+            this.offset = offset;
+        }
+
+        @Override
+        public void onInserted(int position, int count) { target.onInserted(position + offset, count); }
+
+        @Override
+        public void onRemoved(int position, int count) { target.onRemoved(position + offset, count); }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) { target.onMoved(fromPosition + offset, toPosition + offset); }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) { target.onChanged(position + offset, count, payload); }
+    }
+
+    /**
+     * Finds the adapter positions of files that are currently in memory.
+     * Rows that are not loaded are bound fresh when they come on screen, so they need no update.
+     */
+    public void forEachLoaded(LoadedRowVisitor visitor) {
+        for (Map.Entry<Integer, FilePage> entry : pages.entrySet()) {
+            int start = entry.getKey() * PAGE_SIZE;
+            FilePage page = entry.getValue();
+            for (int row = 0; row < page.size(); row++) {
+                visitor.visit(start + row, page, row);
+            }
+        }
+    }
+
+    public interface LoadedRowVisitor {
+        void visit(int position, FilePage page, int row);
+    }
+
+    private void putPage(int pageIndex, FilePage page) {
+        pages.put(pageIndex, page);
+        if (page.size() > 0) {
+            lastRows.put(pageIndex, page.toFileMetadata(page.size() - 1));
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.andreas.personalcloudclient;
+
+import androidx.sqlite.db.SimpleSQLiteQuery;
+import androidx.sqlite.db.SupportSQLiteQuery;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A sorted, optionally type-filtered view of the cached files, and the SQL to page through it.
+ * Every sort orders by (column, filename) in one direction, and every view has an index of
+ * the files table with that order (behind file_type when filtered), so SQLite walks the index
+ * instead of sorting the table. FileQueryPlanTest checks this for each view.
+ * Pages continue from the last row shown with a row-value comparison on the same pair.
+ * Column names only ever come from {@link Sort}; values are always bound.
+ * Pages are read as "SELECT *" cursors into {@link FilePage}s.
+ */
+public final class FileQuery {
+
+    public enum Sort {
+        NAME("filename", false),
+        NEWEST("modified_at", true),
+        LARGEST("size", true);
+
+        final String column;
+        final boolean descending;
+
+        Sort(String column, boolean descending) {
+            this.column = column;
+            this.descending = descending;
+        }
+    }
+
+    public static final FileQuery DEFAULT = new FileQuery(Sort.NAME, null);
+
+    private final Sort sort;
+    // Only files of this type are shown; null for all files.
+    private final String fileType;
+
+    private FileQuery(Sort sort, String fileType) {
+        this.sort = sort;
+        this.fileType = fileType;
+    }
+
+    public FileQuery withSort(Sort sort) {
+        return new FileQuery(sort, fileType);
+    }
+
+    public FileQuery withFileType(String fileType) {
+        return new FileQuery(sort, fileType);
+    }
+
+    public Sort getSort() { return sort; }
+    public String getFileType() { return fileType; }
+
+    // Reads the trigger-maintained per-type counts (see AppDatabase), not the files table.
+    SupportSQLiteQuery count() {
+        if (fileType == null) {
+            return new SimpleSQLiteQuery("SELECT IFNULL(SUM(file_count), 0) FROM file_type_counts");
+        }
+        return new SimpleSQLiteQuery("SELECT IFNULL(SUM(file_count), 0) FROM file_type_counts WHERE file_type = ?",
+            new Object[]{fileType});
+    }
+
+    // The page after the given row, or the first page for null.
+    SupportSQLiteQuery pageAfter(FileMetadata last, int limit) {
+        List<Object> args = new ArrayList<>();
+        String sql = "SELECT * FROM files" + where(last, true, false, args) + orderBy(false) + " LIMIT ?";
+        args.add(limit);
+        return new SimpleSQLiteQuery(sql, args.toArray());
+    }
+
+    // The rows from the given row on, including it if it still exists.
+    SupportSQLiteQuery pageFrom(FileMetadata first, int limit) {
+        List<Object> args = new ArrayList<>();
+        String sql = "SELECT * FROM files" + where(first, true, true, args) + orderBy(false) + " LIMIT ?";
+        args.add(limit);
+        return new SimpleSQLiteQuery(sql, args.toArray());
+    }
+
+    // The rows just before the given row, nearest first, so in reverse order.
+    SupportSQLiteQuery pageBefore(FileMetadata row, int limit) {
+        List<Object> args = new ArrayList<>();
+        String sql = "SELECT * FROM files" + where(row, false, false, args) + orderBy(true) + " LIMIT ?";
+        args.add(limit);
+        return new SimpleSQLiteQuery(sql, args.toArray());
+    }
+
+    // Only for jumps to a page whose predecessor was never loaded.
+    SupportSQLiteQuery pageAt(int offset, int limit) {
+        List<Object> args = new ArrayList<>();
+        String sql = "SELECT * FROM files" + where(null, false, false, args) + orderBy(false) + " LIMIT ? OFFSET ?";
+        args.add(limit);
+        args.add(offset);
+        return new SimpleSQLiteQuery(sql, args.toArray());
+    }
+
+    // The position a row has (or would have) in this view.
+    SupportSQLiteQuery countBefore(FileMetadata row) {
+        List<Object> args = new ArrayList<>();
+        return new SimpleSQLiteQuery("SELECT COUNT(*) FROM files" + where(row, false, false, args), args.toArray());
+    }
+
+    /**
+     * The WHERE clause of the view, optionally limited to the rows after (or before) a row.
+     * After means later in this view's order, so for a descending sort it is a smaller value.
+     */
+    private String where(FileMetadata row, boolean after, boolean inclusive, List<Object> args) {
+        List<String> conditions = new ArrayList<>();
+        if (fileType != null) {
+            conditions.add("file_type = ?");
+            args.add(fileType);
+        }
+        if (row != null) {
+            boolean greater = after != sort.descending;
+            String op = (greater ? " >" : " <") + (inclusive ? "= " : " ");
+            if (sort == Sort.NAME) {
+                conditions.add("filename" + op + "?");
+            } else {
+                conditions.add("(" + sort.column + ", filename)" + op + "(?, ?)");
+                args.add(sort == Sort.NEWEST ? row.getModifiedAt() : row.getSize());
+            }
+            args.add(row.getFilename());
+        }
+        return conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+    }
+
+    // The view's order, or its exact reverse for reading backwards from a row.
+    private String orderBy(boolean reversed) {
+        String direction = sort.descending != reversed ? " DESC" : " ASC";
+        if (sort == Sort.NAME) {
+            return " ORDER BY filename" + direction;
+        }
+        return " ORDER BY " + sort.column + direction + ", filename" + direction;
+    }
+}
@@ -1,18 +1,18 @@
 package com.andreas.personalcloudclient;
 
-import android.Manifest;
 import android.app.Application;
+import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
-import android.content.pm.PackageManager;
+import android.content.Intent;
 import android.database.Cursor;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.net.Uri;
-import android.os.Build;
 import android.os.Environment;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.ParcelFileDescriptor;
 import android.provider.MediaStore;
 import android.provider.OpenableColumns;
 import android.util.Log;
@@ -20,20 +20,39 @@ import android.webkit.MimeTypeMap;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
-import androidx.core.app.ActivityCompat;
-import androidx.core.app.NotificationCompat;
-import androidx.core.app.NotificationManagerCompat;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.gson.stream.JsonWriter;
+
+import okhttp3.MediaType;
 import okhttp3.MultipartBody;
+import okhttp3.RequestBody;
 import okhttp3.ResponseBody;
+import okio.BufferedSink;
 import retrofit2.Call;
 import retrofit2.Callback;
 import retrofit2.Response;
@@ -42,9 +61,56 @@ public class FileRepository {
 
     private static final String TAG = "FileRepository";
 
+    // Files at least this large go through a resumable chunked upload session.
+    private static final long CHUNKED_UPLOAD_THRESHOLD = 16L * 1024 * 1024;
+    // A journaled transfer is given up after this many failed attempts.
+    private static final int MAX_TRANSFER_ATTEMPTS = 10;
+    // Re-entering the file list within this window shows the cache without a request.
+    public static final long DEFAULT_LISTING_TTL_MS = 30 * 1000;
+    // Files per request when fetching the full listing.
+    private static final int LISTING_PAGE_SIZE = 1000;
+    // Changes per request when following the change feed, so a long time offline never arrives as one huge page.
+    private static final int CHANGES_PAGE_SIZE = 1000;
+    // Filenames per batch when walking a selection.
+    private static final int SELECTION_BATCH_SIZE = 500;
+    // Search-as-you-type waits this long after the last keystroke before querying.
+    private static final long SEARCH_DEBOUNCE_MS = 150;
+    // Results per search page.
+    public static final int SEARCH_PAGE_SIZE = 50;
+    // Files smaller than this are uploaded in bundles rather than one request each.
+    private static final long BUNDLE_FILE_LIMIT = 1024 * 1024;
+    // A bundle is closed when the next file would take it over this many bytes, or at BUNDLE_MAX_FILES.
+    private static final long BUNDLE_BYTE_BUDGET = 8L * 1024 * 1024;
+    private static final int BUNDLE_MAX_FILES = 500;
+
     public interface GetFilesCallback {
-        void onCacheLoaded(List<FileMetadata> cachedFiles);
-        void onNetworkResult(List<FileMetadata> networkFiles, String error);
+        // The Room cache is as current as it can get right now; error is null on success.
+        void onSyncFinished(String error);
+
+        // Files written so far by a full listing sync.
+        default void onSyncProgress(int filesIngested) {}
+    }
+
+    public interface SelectionBatchCallback {
+        void onBatch(List<String> filenames);
+        // Called after the last batch; total is the number of filenames delivered.
+        void onComplete(int total);
+    }
+
+    public interface BatchDeleteCallback {
+        // After each chunk: files deleted so far, and the failures of this chunk (filename -> reason).
+        default void onProgress(int deletedSoFar, Map<String, String> chunkFailures) {}
+        void onComplete(int deleted, Map<String, String> failures);
+        // Nothing was attempted.
+        void onError(String message);
+    }
+
+    public interface BundledUploadCallback {
+        // After each bundle or single upload: files uploaded so far, and the failures it reported (filename -> reason).
+        default void onProgress(int uploadedSoFar, Map<String, String> failures) {}
+        void onComplete(int uploaded, Map<String, String> failures);
+        // Nothing was attempted.
+        void onError(String message);
     }
 
     public interface RepositoryCallback<T> {
@@ -54,51 +120,589 @@ public class FileRepository {
 
     private final Context context;
     private final ApiService apiService;
+    // Same connections as apiService, but bodies are streamed instead of logged; also used for the listing.
+    private final ApiService transferApiService;
+    private final AppDatabase database;
     private final FileDao fileDao;
+    private final TransferDao transferDao;
+    private final SyncStateDao syncStateDao;
     private final ExecutorService executor;
+    // Search queries only. The executor above also reads listing bodies off the network,
+    // and a keystroke must not wait behind that.
+    private final ExecutorService searchExecutor;
+    // Blocking API calls that are not transfers, e.g. the chunks of a batch delete.
+    private final ExecutorService networkExecutor;
+    private final TransferScheduler transferScheduler;
+    private final ChunkedUploader chunkedUploader;
+    private final ResumableDownloader resumableDownloader;
+    private final ArchiveDownloader archiveDownloader;
+    private final BundledUploader bundledUploader;
+    private final ListingIngester listingIngester;
+    private volatile long listingTtlMillis = DEFAULT_LISTING_TTL_MS;
+    // Set once the server turned out to have no upload/dedup endpoint.
+    private static volatile boolean dedupUnsupported;
+    // Notification ids for transfers that are not journaled and so have no record id.
+    // They count down from the top, far away from the ids the journal hands out.
+    private static final AtomicInteger untrackedNotificationIds = new AtomicInteger(Integer.MAX_VALUE);
+    // Held while a journal entry is inserted and its task submitted, and while the TransferWorker
+    // looks for a live task.
+    private static final Object journalLock = new Object();
+
+    // --- Single-flight listing refresh ---
+    // Shared by every FileRepository, since they all write the same cached listing.
+    private static final Object refreshLock = new Object();
+    // Callers waiting for the running refresh; null while none is running.
+    private static List<GetFilesCallback> refreshWaiters;
+    private static boolean refreshForced;
+    // The listing changed (or a forced refresh was asked for) after the running refresh started.
+    private static boolean refreshAgain;
+
+    // Search state; only touched on the main thread.
+    private final Handler searchHandler = new Handler(Looper.getMainLooper());
+    private Runnable pendingSearch;
+    // Bumped by every new query, so results of superseded queries are dropped.
+    private int searchGeneration = 0;
+
+    private static volatile FileRepository INSTANCE;
+
+    // One repository for the whole process, so the UI and the TransferWorker share its executor.
+    public static FileRepository getInstance(Application application) {
+        if (INSTANCE == null) {
+            synchronized (FileRepository.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new FileRepository(application);
+                }
+            }
+        }
+        return INSTANCE;
+    }
 
-    public FileRepository(Application application) {
+    private FileRepository(Application application) {
         this.context = application.getApplicationContext();
-        AppDatabase database = AppDatabase.getDatabase(application);
+        this.database = AppDatabase.getDatabase(application);
         this.fileDao = database.fileDao();
+        this.transferDao = database.transferDao();
+        this.syncStateDao = database.syncStateDao();
         // Pass the application context to the RetrofitClient
         this.apiService = RetrofitClient.getClient(application).create(ApiService.class);
+        this.transferApiService = RetrofitClient.getTransferApiService(application);
         this.executor = Executors.newSingleThreadExecutor();
+        this.searchExecutor = Executors.newSingleThreadExecutor();
+        this.networkExecutor = Executors.newSingleThreadExecutor();
+        this.transferScheduler = TransferScheduler.getInstance();
+        this.chunkedUploader = new ChunkedUploader(context, transferApiService);
+        this.resumableDownloader = new ResumableDownloader(transferApiService);
+        this.archiveDownloader = new ArchiveDownloader(context.getContentResolver(), transferApiService);
+        this.bundledUploader = new BundledUploader(context.getContentResolver(), transferApiService);
+        this.listingIngester = new ListingIngester(database);
     }
 
     public void getFiles(GetFilesCallback callback) {
+        getFiles(false, callback);
+    }
+
+    /**
+     * Brings the cached listing in Room up to date; a {@link FilePager} shows it as it changes.
+     * Within the listing TTL the cache is trusted and no request is made at all.
+     * After it, only the changes since the stored cursor are fetched; without a cursor the full
+     * listing is fetched page by page, conditionally, so an unchanged listing costs a 304 and no database writes.
+     * Only one refresh runs at a time across all repositories: a call made while one is running
+     * joins it and is told when it finishes. If this client changed the listing after the running
+     * refresh started, one more refresh follows before anyone is told, so no caller sees a listing
+     * older than its own change.
+     *
+     * @param forceRevalidate Ignore the TTL, e.g. for swipe-to-refresh.
+     */
+    public void getFiles(boolean forceRevalidate, GetFilesCallback callback) {
+        synchronized (refreshLock) {
+            if (refreshWaiters != null) {
+                refreshWaiters.add(callback);
+                // A refresh that may answer from the TTL cannot stand in for a forced one.
+                if (forceRevalidate && !refreshForced) {
+                    refreshAgain = true;
+                }
+                return;
+            }
+            refreshWaiters = new ArrayList<>();
+            refreshWaiters.add(callback);
+            refreshForced = forceRevalidate;
+            refreshAgain = false;
+        }
+        startRefresh(forceRevalidate);
+    }
+
+    private void startRefresh(boolean forceRevalidate) {
+        // Fans progress and the result of the one running refresh out to every waiting caller.
+        GetFilesCallback shared = new GetFilesCallback() {
+            @Override
+            public void onSyncProgress(int filesIngested) {
+                for (GetFilesCallback waiter : refreshWaitersSnapshot()) {
+                    waiter.onSyncProgress(filesIngested);
+                }
+            }
+
+            @Override
+            public void onSyncFinished(String error) {
+                finishRefresh(error);
+            }
+        };
+
+        executor.execute(() -> {
+            SyncState state = syncStateDao.get(SyncState.KEY_FILE_LISTING);
+            boolean haveCache = state != null && fileDao.getCount() > 0;
+            if (haveCache && !forceRevalidate && System.currentTimeMillis() - state.getValidatedAt() < listingTtlMillis) {
+                new Handler(Looper.getMainLooper()).post(() -> shared.onSyncFinished(null));
+                return;
+            }
+
+            if (!isNetworkAvailable()) {
+                new Handler(Looper.getMainLooper()).post(() -> shared.onSyncFinished("Offline: Showing cached files."));
+                return;
+            }
+
+            if (haveCache && state.getCursor() != null) {
+                fetchChanges(state.getCursor(), shared);
+            } else {
+                fetchListingPage(haveCache, null, null, 0, shared);
+            }
+        });
+    }
+
+    // Runs on the main thread when the running refresh is done.
+    private void finishRefresh(String error) {
+        List<GetFilesCallback> waiters;
+        synchronized (refreshLock) {
+            if (refreshAgain) {
+                // The listing changed while we fetched it; the waiters get the trailing result instead.
+                refreshAgain = false;
+                refreshForced = true;
+                waiters = null;
+            } else {
+                waiters = refreshWaiters;
+                refreshWaiters = null;
+            }
+        }
+        if (waiters == null) {
+            startRefresh(true);
+            return;
+        }
+        for (GetFilesCallback waiter : waiters) {
+            waiter.onSyncFinished(error);
+        }
+    }
+
+    private static List<GetFilesCallback> refreshWaitersSnapshot() {
+        synchronized (refreshLock) {
+            return refreshWaiters != null ? new ArrayList<>(refreshWaiters) : new ArrayList<>();
+        }
+    }
+
+    /**
+     * Walks the selected filenames in sorted batches, so a bulk action never holds the whole
+     * selection in memory. An "all except" selection is read from Room page by page,
+     * limited to the file type it was made in.
+     * Batches are delivered on the main thread, followed by onComplete with their total.
+     */
+    public void forEachSelected(SelectionModel selection, SelectionBatchCallback callback) {
         executor.execute(() -> {
-            List<FileMetadata> cachedFiles = fileDao.getAllFiles();
-            new Handler(Looper.getMainLooper()).post(() -> callback.onCacheLoaded(cachedFiles));
+            Handler mainHandler = new Handler(Looper.getMainLooper());
+            int total = walkSelected(selection, batch -> mainHandler.post(() -> callback.onBatch(batch)));
+            mainHandler.post(() -> callback.onComplete(total));
         });
+    }
+
+    private interface BatchVisitor {
+        void visit(List<String> filenames);
+    }
 
+    // Blocking. Returns the number of filenames visited.
+    private int walkSelected(SelectionModel selection, BatchVisitor visitor) {
+        SelectionWalk walk = new SelectionWalk(selection);
+        int total = 0;
+        for (List<String> batch = walk.next(); !batch.isEmpty(); batch = walk.next()) {
+            visitor.visit(batch);
+            total += batch.size();
+        }
+        return total;
+    }
+
+    // Hands out the selected filenames in sorted batches, one batch per call.
+    private class SelectionWalk {
+        private final SelectionModel selection;
+        // An explicit selection, sorted once; null for "all except".
+        private final List<String> selected;
+        private int position = 0;
+        private String after = "";
+        private boolean exhausted = false;
+
+        SelectionWalk(SelectionModel selection) {
+            this.selection = selection;
+            if (selection.isAllExcept()) {
+                this.selected = null;
+            } else {
+                this.selected = new ArrayList<>(selection.getExceptions());
+                Collections.sort(selected);
+            }
+        }
+
+        // The next batch, or an empty list at the end. Blocking: an "all except" selection queries Room.
+        List<String> next() {
+            if (selected != null) {
+                int end = Math.min(position + SELECTION_BATCH_SIZE, selected.size());
+                List<String> batch = new ArrayList<>(selected.subList(position, end));
+                position = end;
+                return batch;
+            }
+            // Keyset paging keeps working if the caller deletes the rows it was given.
+            List<String> batch = new ArrayList<>();
+            while (batch.isEmpty() && !exhausted) {
+                List<String> page = selection.getFileType() == null
+                    ? fileDao.getFilenamesAfter(after, SELECTION_BATCH_SIZE)
+                    : fileDao.getFilenamesOfTypeAfter(selection.getFileType(), after, SELECTION_BATCH_SIZE);
+                for (String filename : page) {
+                    if (!selection.getExceptions().contains(filename)) batch.add(filename);
+                }
+                if (!page.isEmpty()) after = page.get(page.size() - 1);
+                exhausted = page.size() < SELECTION_BATCH_SIZE;
+            }
+            return batch;
+        }
+    }
+
+    /**
+     * Deletes the selected files in chunks of one request each, one chunk at a time.
+     * The files the server confirmed are removed from the cache in one transaction per chunk,
+     * so the list updates in place as chunks complete and no refetch is needed.
+     * Servers without the batch endpoint get one request per file, still applied per chunk.
+     * The requests run on the network executor; only reading the next chunk and updating the
+     * cache go through the database executor, so paging and sync are not held up by the server.
+     * Callbacks run on the main thread.
+     */
+    public void deleteFiles(SelectionModel selection, BatchDeleteCallback callback) {
         if (!isNetworkAvailable()) {
-            new Handler(Looper.getMainLooper()).post(() -> callback.onNetworkResult(null, "Offline: Showing cached files."));
+            callback.onError("Offline: Cannot delete files.");
             return;
         }
-
-        apiService.getFiles().enqueue(new Callback<List<FileMetadata>>() {
-            @Override
-            public void onResponse(@NonNull Call<List<FileMetadata>> call, @NonNull Response<List<FileMetadata>> response) {
-                if (response.isSuccessful() && response.body() != null) {
-                    List<FileMetadata> networkFiles = response.body();
-                    executor.execute(() -> {
-                        fileDao.deleteAll();
-                        fileDao.insertAll(networkFiles);
+        networkExecutor.execute(() -> {
+            Handler mainHandler = new Handler(Looper.getMainLooper());
+            SelectionWalk walk = new SelectionWalk(selection);
+            int deleted = 0;
+            Map<String, String> failures = new LinkedHashMap<>();
+            try {
+                for (List<String> chunk = onExecutor(walk::next); !chunk.isEmpty(); chunk = onExecutor(walk::next)) {
+                    Map<String, String> chunkFailures = new LinkedHashMap<>();
+                    List<String> gone = deleteChunk(chunk, chunkFailures);
+                    onExecutor(() -> {
+                        database.runInTransaction(() -> fileDao.deleteInChunks(gone));
+                        return null;
                     });
-                    callback.onNetworkResult(networkFiles, null);
+                    deleted += gone.size();
+                    failures.putAll(chunkFailures);
+                    int deletedSoFar = deleted;
+                    mainHandler.post(() -> callback.onProgress(deletedSoFar, chunkFailures));
+                }
+            } catch (InterruptedException e) {
+                // Stop after the chunks done so far and report them.
+                Thread.currentThread().interrupt();
+            }
+            if (deleted > 0) {
+                invalidateListing();
+            }
+            int deletedTotal = deleted;
+            mainHandler.post(() -> callback.onComplete(deletedTotal, failures));
+        });
+    }
+
+    // Runs a step on the database executor and waits for its result.
+    private <T> T onExecutor(Callable<T> step) throws InterruptedException {
+        try {
+            return executor.submit(step).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    // Blocking. Returns the filenames that are gone; the others are put into failures with a reason.
+    private List<String> deleteChunk(List<String> chunk, Map<String, String> failures) {
+        try {
+            Response<BatchDeleteResponse> response = apiService.deleteFiles(new BatchDeleteRequest(chunk)).execute();
+            if (response.code() == 404 || response.code() == 405) {
+                return deleteOneByOne(chunk, failures);
+            }
+            if (!response.isSuccessful() || response.body() == null) {
+                for (String filename : chunk) {
+                    failures.put(filename, "Delete failed. Code: " + response.code());
+                }
+                return new ArrayList<>();
+            }
+            for (BatchFailure failure : response.body().getFailed()) {
+                failures.put(failure.getFilename(), failure.getError());
+            }
+            return response.body().getDeleted();
+        } catch (IOException e) {
+            for (String filename : chunk) {
+                failures.put(filename, "Delete error: " + e.getMessage());
+            }
+            return new ArrayList<>();
+        }
+    }
+
+    // Fallback for servers without files/delete.
+    private List<String> deleteOneByOne(List<String> chunk, Map<String, String> failures) {
+        List<String> gone = new ArrayList<>();
+        for (String filename : chunk) {
+            try {
+                Response<ResponseBody> response = apiService.deleteFile(filename).execute();
+                if (response.body() != null) response.body().close();
+                if (response.isSuccessful() || response.code() == 404) {
+                    gone.add(filename);
                 } else {
-                    callback.onNetworkResult(null, "Failed to fetch files. Code: " + response.code());
+                    failures.put(filename, "Delete failed. Code: " + response.code());
                 }
+            } catch (IOException e) {
+                failures.put(filename, "Delete error: " + e.getMessage());
+            }
+        }
+        return gone;
+    }
+
+    /**
+     * Searches the cached filenames through the full-text index. Each word of the text is
+     * matched as a prefix of a word in the name, and all words must match.
+     * A new query (after == null) is debounced and replaces any earlier one; the next page of
+     * the current query (after = last filename shown) runs right away.
+     * Results of a query that was replaced in the meantime are never delivered.
+     * Must be called on the main thread; the callback runs on the main thread.
+     */
+    public void searchFiles(String text, String after, RepositoryCallback<List<FileMetadata>> callback) {
+        if (after == null) {
+            cancelSearch();
+        }
+        final int generation = searchGeneration;
+        final String match = toMatchQuery(text);
+        Runnable search = () -> {
+            pendingSearch = null;
+            if (match == null) {
+                callback.onSuccess(new ArrayList<>());
+                return;
+            }
+            searchExecutor.execute(() -> {
+                List<FileMetadata> page = fileDao.searchAfter(match, after != null ? after : "", SEARCH_PAGE_SIZE);
+                searchHandler.post(() -> {
+                    if (generation == searchGeneration) {
+                        callback.onSuccess(page);
+                    }
+                });
+            });
+        };
+        if (after == null) {
+            pendingSearch = search;
+            searchHandler.postDelayed(search, SEARCH_DEBOUNCE_MS);
+        } else {
+            search.run();
+        }
+    }
+
+    // Drops the pending and running search, e.g. when the search box is closed.
+    public void cancelSearch() {
+        searchGeneration++;
+        if (pendingSearch != null) {
+            searchHandler.removeCallbacks(pendingSearch);
+            pendingSearch = null;
+        }
+    }
+
+    /**
+     * Turns typed text into an FTS MATCH expression: "Holiday pho" -> "holiday* pho*".
+     * Splitting on the same characters as the tokenizer keeps quotes and operators out of the query.
+     *
+     * @return null if the text has no searchable words.
+     */
+    static String toMatchQuery(String text) {
+        if (text == null) return null;
+        StringBuilder match = new StringBuilder();
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) continue;
+            if (match.length() > 0) match.append(' ');
+            match.append(word).append('*');
+        }
+        return match.length() > 0 ? match.toString() : null;
+    }
+
+    // A FilePager over the cached listing. The caller must close it.
+    public FilePager createFilePager() {
+        return new FilePager(database);
+    }
+
+    /**
+     * Pulls the change feed page by page and applies each page together with its cursor,
+     * so an interrupted sync resumes from the last applied page.
+     * Falls back to the full listing if the server no longer knows the cursor.
+     */
+    private void fetchChanges(String cursor, GetFilesCallback callback) {
+        apiService.getFileChanges(cursor, CHANGES_PAGE_SIZE).enqueue(new Callback<FileChanges>() {
+            @Override
+            public void onResponse(@NonNull Call<FileChanges> call, @NonNull Response<FileChanges> response) {
+                if (response.code() == 410 || response.code() == 404) {
+                    // The cursor expired (or the server has no change feed): resync everything.
+                    Log.i(TAG, "Change cursor rejected (" + response.code() + "), doing a full resync");
+                    fetchListingPage(false, null, null, 0, callback);
+                    return;
+                }
+                if (!response.isSuccessful() || response.body() == null) {
+                    callback.onSyncFinished("Failed to fetch changes. Code: " + response.code());
+                    return;
+                }
+
+                FileChanges changes = response.body();
+                if (changes.hasMore() && (changes.getCursor() == null || changes.getCursor().equals(cursor))) {
+                    // A feed that does not move on would hand out the same page forever.
+                    Log.w(TAG, "Change feed did not advance past " + cursor + ", doing a full resync");
+                    fetchListingPage(false, null, null, 0, callback);
+                    return;
+                }
+                executor.execute(() -> {
+                    database.runInTransaction(() -> {
+                        fileDao.applyChanges(changes.getChanged(), changes.getDeleted());
+                        syncStateDao.advanceCursor(SyncState.KEY_FILE_LISTING, changes.getCursor(), System.currentTimeMillis());
+                    });
+                    if (changes.hasMore()) {
+                        fetchChanges(changes.getCursor(), callback);
+                    } else {
+                        new Handler(Looper.getMainLooper()).post(() -> callback.onSyncFinished(null));
+                    }
+                });
             }
 
             @Override
-            public void onFailure(@NonNull Call<List<FileMetadata>> call, @NonNull Throwable t) {
-                callback.onNetworkResult(null, "Network Error: " + t.getMessage());
+            public void onFailure(@NonNull Call<FileChanges> call, @NonNull Throwable t) {
+                callback.onSyncFinished("Network Error: " + t.getMessage());
             }
         });
     }
 
+    /**
+     * Fetches one keyset page of the full listing and streams it into Room, reconciling exactly
+     * its key range, so memory stays constant however large the page or the account is, and the
+     * first page shows up before the rest arrive.
+     * A server that ignores paging answers with the whole listing, which is then one big last page.
+     * Every page is revalidated with its own ETag / Last-Modified, so a 304 only vouches for that
+     * page: an unchanged page is skipped and the next one is still asked for.
+     *
+     * @param revalidate      Whether the cached pages may be sent as conditional requests.
+     * @param after           The last filename of the previous page, or null for the first page.
+     * @param newState        The listing state being built, saved once the last page is in; null for the first page.
+     * @param ingestedBefore  Files ingested by earlier pages, for progress.
+     */
+    private void fetchListingPage(boolean revalidate, String after, SyncState newState, int ingestedBefore,
+                                  GetFilesCallback callback) {
+        // The page's validators are read from Room, so the request is started from the executor.
+        executor.execute(() -> {
+            SyncState state = newState;
+            if (state == null) {
+                state = new SyncState();
+                state.setKey(SyncState.KEY_FILE_LISTING);
+                // When this sync started; pages it does not confirm are dropped at the end.
+                state.setValidatedAt(System.currentTimeMillis());
+            }
+            final SyncState finalState = state;
+            final String pageKey = SyncState.listingPageKey(after);
+            SyncState cachedPage = revalidate ? syncStateDao.get(pageKey) : null;
+            String etag = cachedPage != null ? cachedPage.getEtag() : null;
+            String lastModified = cachedPage != null ? cachedPage.getLastModified() : null;
+
+            // Through the transfer client: the main client logs bodies, which would buffer the whole page first.
+            transferApiService.getFiles(etag, lastModified, after, LISTING_PAGE_SIZE).enqueue(new Callback<ResponseBody>() {
+                @Override
+                public void onResponse(@NonNull Call<ResponseBody> call, @NonNull Response<ResponseBody> response) {
+                    if (after == null) {
+                        // Servers with a change feed say where it stands, so the next refresh can be a delta.
+                        finalState.setCursor(response.headers().get("X-Change-Cursor"));
+                    }
+                    if (response.code() == 304 && cachedPage != null) {
+                        // Only this page is current; remember when we checked it and go on after it.
+                        executor.execute(() -> {
+                            syncStateDao.markValidated(pageKey, System.currentTimeMillis());
+                            if (cachedPage.getCursor() == null) {
+                                finishListing(finalState, callback);
+                            } else {
+                                fetchListingPage(true, cachedPage.getCursor(), finalState, ingestedBefore, callback);
+                            }
+                        });
+                        return;
+                    }
+                    ResponseBody body = response.body();
+                    if (!response.isSuccessful() || body == null) {
+                        if (body != null) body.close();
+                        callback.onSyncFinished("Failed to fetch files. Code: " + response.code());
+                        return;
+                    }
+
+                    SyncState page = new SyncState();
+                    page.setKey(pageKey);
+                    page.setEtag(response.headers().get("ETag"));
+                    page.setLastModified(response.headers().get("Last-Modified"));
+                    final String rangeStart = after != null ? after : "";
+                    // Reading the body is network I/O, so it happens on the executor, not here.
+                    executor.execute(() -> {
+                        ListingIngester.Result result;
+                        try {
+                            result = listingIngester.ingest(body, rangeStart,
+                                (count, firstFilename) -> count != LISTING_PAGE_SIZE
+                                    // The server ignored "after" and sent the listing from the start again.
+                                    || (after != null && firstFilename != null && firstFilename.compareTo(after) <= 0),
+                                filesIngested -> new Handler(Looper.getMainLooper()).post(() ->
+                                    callback.onSyncProgress(ingestedBefore + filesIngested)));
+                        } catch (IOException | RuntimeException e) {
+                            Log.e(TAG, "Failed to ingest listing", e);
+                            new Handler(Looper.getMainLooper()).post(() -> callback.onSyncFinished("Network Error: " + e.getMessage()));
+                            return;
+                        }
+
+                        page.setCursor(result.lastPage ? null : result.lastFilename);
+                        page.setValidatedAt(System.currentTimeMillis());
+                        syncStateDao.save(page);
+                        if (result.lastPage) {
+                            finishListing(finalState, callback);
+                        } else {
+                            fetchListingPage(revalidate, result.lastFilename, finalState, ingestedBefore + result.count, callback);
+                        }
+                    });
+                }
+
+                @Override
+                public void onFailure(@NonNull Call<ResponseBody> call, @NonNull Throwable t) {
+                    callback.onSyncFinished("Network Error: " + t.getMessage());
+                }
+            });
+        });
+    }
+
+    // Runs on the executor once the last page of the listing is in.
+    private void finishListing(SyncState state, GetFilesCallback callback) {
+        syncStateDao.deleteUnconfirmed(SyncState.KEY_FILE_LISTING_PAGE_PREFIX, state.getValidatedAt());
+        state.setValidatedAt(System.currentTimeMillis());
+        syncStateDao.save(state);
+        new Handler(Looper.getMainLooper()).post(() -> callback.onSyncFinished(null));
+    }
+
+    // How long a validated listing is shown without asking the server again.
+    public void setListingTtlMillis(long listingTtlMillis) {
+        this.listingTtlMillis = listingTtlMillis;
+    }
+
+    // Makes the next getFiles ask the server, after this client changed the listing itself.
+    // A refresh that is already running may have missed the change, so it is followed by another.
+    private void invalidateListing() {
+        synchronized (refreshLock) {
+            if (refreshWaiters != null) {
+                refreshAgain = true;
+            }
+        }
+        executor.execute(() -> syncStateDao.invalidate(SyncState.KEY_FILE_LISTING));
+    }
+
     public void deleteFile(String filename, RepositoryCallback<String> callback) {
         if (!isNetworkAvailable()) {
             callback.onError("Offline: Cannot delete file.");
@@ -109,6 +713,7 @@ public class FileRepository {
             public void onResponse(@NonNull Call<ResponseBody> call, @NonNull Response<ResponseBody> response) {
                 if (response.isSuccessful()) {
                     executor.execute(() -> fileDao.deleteFileByFilename(filename)); // Update database
+                    invalidateListing();
                     callback.onSuccess(filename + " deleted successfully.");
                 } else {
                     callback.onError("Delete failed. Code: " + response.code());
@@ -122,138 +727,469 @@ public class FileRepository {
     }
 
     public void uploadFile(Uri fileUri, RepositoryCallback<String> callback) {
+        uploadFile(fileUri, TransferTask.Priority.EXPLICIT, callback);
+    }
+
+    /**
+     * Journals an upload and queues it on the TransferScheduler. Large files are streamed in
+     * resumable chunks; small files (or servers without upload sessions) use a single multipart request.
+     * The content is hashed first, and content the cache or the server already knows is not sent at all.
+     * If the process dies, the TransferWorker picks the journal entry up again.
+     */
+    public void uploadFile(Uri fileUri, TransferTask.Priority priority, RepositoryCallback<String> callback) {
         if (!isNetworkAvailable()) {
             callback.onError("Offline: Cannot upload file.");
             return;
         }
 
-        File tempFile = createTempFileFromUri(fileUri);
-        if (tempFile == null) {
-            callback.onError("Failed to read file for upload.");
-            return;
+        // Keep read access to the Uri across restarts, so a journaled upload can still open it.
+        try {
+            context.getContentResolver().takePersistableUriPermission(fileUri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        } catch (SecurityException e) {
+            Log.w(TAG, "No persistable permission for " + fileUri + "; upload cannot survive a restart");
         }
 
-        String originalFileName = getFileNameFromUri(fileUri);
-        final int notificationId = (int) System.currentTimeMillis();
-        final NotificationManagerCompat notificationManager = NotificationManagerCompat.from(context);
-        final NotificationCompat.Builder builder = new NotificationCompat.Builder(context, "upload_channel")
-            .setContentTitle(originalFileName)
-            .setContentText("Upload starting...")
-            .setSmallIcon(android.R.drawable.stat_sys_upload)
-            .setPriority(NotificationCompat.PRIORITY_LOW)
-            .setOngoing(true);
+        TransferRecord record = new TransferRecord();
+        record.setDirection(TransferTask.Direction.UPLOAD);
+        record.setSource(fileUri.toString());
+        record.setFilename(getFileNameFromUri(fileUri));
+        record.setDestination(record.getFilename());
+        record.setTotalBytes(getFileSizeFromUri(fileUri));
+        record.setPriority(priority);
+        submitJournaled(record, callback);
+    }
 
-        ProgressRequestBody.ProgressListener progressListener = (bytesUploaded, totalBytes) -> {
-            int progress = (int) ((100 * bytesUploaded) / totalBytes);
-            builder.setProgress(100, progress, false).setContentText(progress + "%");
-            if (ActivityCompat.checkSelfPermission(context, Manifest.permission.POST_NOTIFICATIONS) == PackageManager.PERMISSION_GRANTED) {
-                notificationManager.notify(notificationId, builder.build());
+    /**
+     * Uploads many files at once. Small files are packed into bundles of up to BUNDLE_BYTE_BUDGET
+     * bytes, and each bundle is sent as one multipart request that the server unpacks; larger files
+     * get their own journaled upload as in {@link #uploadFile}. Bundles are queued on the
+     * TransferScheduler, so only as many run at once as its upload limit allows, and each shows
+     * one notification. Bundles are not journaled: after a restart they are not resumed.
+     * Every file is hashed first, and a bundled file whose content the cache already holds
+     * under the same name is not sent at all.
+     * Callbacks run on the main thread.
+     */
+    public void uploadFiles(List<Uri> fileUris, BundledUploadCallback callback) {
+        if (!isNetworkAvailable()) {
+            callback.onError("Offline: Cannot upload files.");
+            return;
+        }
+        executor.execute(() -> {
+            // Provider queries are too slow for the main thread when there are thousands of files.
+            List<List<BundledUploader.Entry>> bundles = new ArrayList<>();
+            List<BundledUploader.Entry> large = new ArrayList<>();
+            List<BundledUploader.Entry> bundle = new ArrayList<>();
+            long bundleBytes = 0;
+            for (Uri uri : fileUris) {
+                long size = getFileSizeFromUri(uri);
+                BundledUploader.Entry entry = new BundledUploader.Entry(uri, getFileNameFromUri(uri), size);
+                if (size < 0 || size >= BUNDLE_FILE_LIMIT) {
+                    large.add(entry);
+                    continue;
+                }
+                if (!bundle.isEmpty() && (bundleBytes + size > BUNDLE_BYTE_BUDGET || bundle.size() == BUNDLE_MAX_FILES)) {
+                    bundles.add(bundle);
+                    bundle = new ArrayList<>();
+                    bundleBytes = 0;
+                }
+                bundle.add(entry);
+                bundleBytes += size;
+            }
+            if (!bundle.isEmpty()) {
+                bundles.add(bundle);
+            }
+            new Handler(Looper.getMainLooper()).post(() -> submitUploads(bundles, large, callback));
+        });
+    }
+
+    // Runs on the main thread, where every result is counted.
+    private void submitUploads(List<List<BundledUploader.Entry>> bundles, List<BundledUploader.Entry> large,
+                               BundledUploadCallback callback) {
+        final int[] pending = {bundles.size() + large.size()};
+        final int[] uploaded = {0};
+        final Map<String, String> failures = new LinkedHashMap<>();
+        if (pending[0] == 0) {
+            callback.onComplete(0, failures);
+            return;
+        }
+        BundleResultListener onResult = (done, partFailures) -> {
+            uploaded[0] += done;
+            failures.putAll(partFailures);
+            callback.onProgress(uploaded[0], partFailures);
+            if (--pending[0] == 0) {
+                callback.onComplete(uploaded[0], failures);
             }
         };
 
-        ProgressRequestBody requestBody = new ProgressRequestBody(tempFile, progressListener);
-        MultipartBody multipartBody = new MultipartBody.Builder()
-            .setType(MultipartBody.FORM)
-            .addFormDataPart("file", originalFileName, requestBody)
-            .build();
+        for (List<BundledUploader.Entry> files : bundles) {
+            submitBundle(files, onResult);
+        }
+        for (BundledUploader.Entry entry : large) {
+            uploadFile(entry.uri, new RepositoryCallback<String>() {
+                @Override
+                public void onSuccess(String result) {
+                    onResult.onResult(1, Collections.emptyMap());
+                }
 
-        if (ActivityCompat.checkSelfPermission(context, Manifest.permission.POST_NOTIFICATIONS) == PackageManager.PERMISSION_GRANTED) {
-            notificationManager.notify(notificationId, builder.build());
+                @Override
+                public void onError(String message) {
+                    onResult.onResult(0, Collections.singletonMap(entry.getFilename(), message));
+                }
+            });
         }
+    }
 
-        apiService.uploadFile(multipartBody).enqueue(new Callback<UploadResponse>() {
-            @Override
-            public void onResponse(@NonNull Call<UploadResponse> call, @NonNull Response<UploadResponse> response) {
-                builder.setOngoing(false);
-                if (response.isSuccessful()) {
-                    builder.setContentText("Upload complete").setProgress(0, 0, false).setSmallIcon(android.R.drawable.stat_sys_upload_done);
-                    callback.onSuccess("Upload successful!");
-                } else {
-                    builder.setContentText("Upload failed").setProgress(0, 0, false);
-                    callback.onError("Upload failed. Code: " + response.code());
+    private interface BundleResultListener {
+        void onResult(int uploaded, Map<String, String> failures);
+    }
+
+    private void submitBundle(List<BundledUploader.Entry> files, BundleResultListener onResult) {
+        final List<String> uploaded = new ArrayList<>();
+        final Map<String, String> failures = new LinkedHashMap<>();
+        String name = files.size() + " files";
+        final int notificationId = untrackedNotificationIds.getAndDecrement();
+        // Starts over when a paused bundle is resumed; the server simply stores the files again.
+        TransferTask.Work work = task -> {
+            uploaded.clear();
+            failures.clear();
+            // As for single uploads, content the cache already holds under the same name is not sent.
+            // Asking the server by hash would cost a round trip per file, which bundles exist to avoid.
+            List<BundledUploader.Entry> toSend = new ArrayList<>();
+            Map<String, String> hashes = new HashMap<>();
+            for (BundledUploader.Entry entry : files) {
+                String contentHash = hashContent(entry.uri, entry.getSize());
+                if (contentHash != null && fileDao.hasFileWithHash(entry.getFilename(), contentHash)) {
+                    uploaded.add(entry.getFilename());
+                    continue;
                 }
-                if (ActivityCompat.checkSelfPermission(context, Manifest.permission.POST_NOTIFICATIONS) == PackageManager.PERMISSION_GRANTED) {
-                    notificationManager.notify(notificationId, builder.build());
+                if (contentHash != null) {
+                    hashes.put(entry.getFilename(), contentHash);
                 }
+                toSend.add(entry);
+            }
+            if (!toSend.isEmpty()) {
+                List<String> sent = bundledUploader.upload(toSend, task::setProgress, failures);
+                Set<String> stored = new HashSet<>(sent);
+                for (BundledUploader.Entry entry : toSend) {
+                    String contentHash = hashes.get(entry.getFilename());
+                    if (contentHash != null && stored.contains(entry.getFilename())) {
+                        fileDao.setContentHash(entry.getFilename(), contentHash, entry.getSize());
+                    }
+                }
+                uploaded.addAll(sent);
+            }
+        };
+
+        transferScheduler.submit(new TransferTask(name, TransferTask.Direction.UPLOAD, TransferTask.Priority.EXPLICIT, work, new TransferTask.Listener() {
+            @Override
+            public void onStarted(TransferTask task) {
+                TransferProgressDispatcher.getInstance(context).track(task, notificationId);
             }
+
             @Override
-            public void onFailure(@NonNull Call<UploadResponse> call, @NonNull Throwable t) {
-                builder.setOngoing(false).setContentText("Upload failed").setProgress(0, 0, false);
-                if (ActivityCompat.checkSelfPermission(context, Manifest.permission.POST_NOTIFICATIONS) == PackageManager.PERMISSION_GRANTED) {
-                    notificationManager.notify(notificationId, builder.build());
+            public void onFinished(TransferTask task, IOException error) {
+                TransferProgressDispatcher dispatcher = TransferProgressDispatcher.getInstance(context);
+                if (error == null) {
+                    dispatcher.finish(task, failures.isEmpty(), failures.isEmpty()
+                        ? "Upload complete" : failures.size() + " of " + files.size() + " files failed");
+                    if (!uploaded.isEmpty()) {
+                        invalidateListing();
+                    }
+                    onResult.onResult(uploaded.size(), failures);
+                } else {
+                    Log.e(TAG, "Bundle of " + name + " failed", error);
+                    dispatcher.finish(task, false, "Upload failed");
+                    Map<String, String> bundleFailures = new LinkedHashMap<>();
+                    for (BundledUploader.Entry entry : files) {
+                        bundleFailures.put(entry.getFilename(), "Upload error: " + error.getMessage());
+                    }
+                    onResult.onResult(0, bundleFailures);
                 }
-                callback.onError("Upload error: " + t.getMessage());
             }
-        });
+        }));
     }
 
     public void downloadFile(String filename, RepositoryCallback<String> callback) {
+        downloadFile(filename, TransferTask.Priority.EXPLICIT, callback);
+    }
+
+    // Journals a download into the public Downloads collection and queues it on the TransferScheduler.
+    public void downloadFile(String filename, TransferTask.Priority priority, RepositoryCallback<String> callback) {
         if (!isNetworkAvailable()) {
             callback.onError("Offline: Cannot download file.");
             return;
         }
 
-        final int notificationId = (int) System.currentTimeMillis();
-        final NotificationManagerCompat notificationManager = NotificationManagerCompat.from(context);
-        final NotificationCompat.Builder builder = new NotificationCompat.Builder(context, "download_channel")
-            .setContentTitle(filename)
-            .setContentText("Download starting...")
-            .setSmallIcon(android.R.drawable.stat_sys_download)
-            .setPriority(NotificationCompat.PRIORITY_LOW)
-            .setOngoing(true);
+        TransferRecord record = new TransferRecord();
+        record.setDirection(TransferTask.Direction.DOWNLOAD);
+        record.setSource(filename);
+        record.setFilename(filename);
+        record.setDestination(new File(getPartialDownloadDir(), filename + ResumableDownloader.PARTIAL_SUFFIX).getPath());
+        record.setPriority(priority);
+        submitJournaled(record, callback);
+    }
 
-        DownloadProgressListener progressListener = progress -> {
-            builder.setProgress(100, progress, false).setContentText(progress + "%");
-            if (ActivityCompat.checkSelfPermission(context, Manifest.permission.POST_NOTIFICATIONS) == PackageManager.PERMISSION_GRANTED) {
-                notificationManager.notify(notificationId, builder.build());
-            }
-        };
+    // --- Transfer journal ---
 
-        ApiService downloadService = RetrofitClient.getDownloadApiService(context,progressListener);
+    // Blocking; for the TransferWorker.
+    public List<TransferRecord> getUnfinishedTransfers() {
+        return transferDao.getUnfinished();
+    }
 
-        if (ActivityCompat.checkSelfPermission(context, Manifest.permission.POST_NOTIFICATIONS) == PackageManager.PERMISSION_GRANTED) {
-            notificationManager.notify(notificationId, builder.build());
+    /**
+     * Re-submits a journal entry after a restart, or returns the task that is already running it.
+     * Blocking callers only; there is no UI callback for restored transfers.
+     */
+    public TransferTask resumeJournaledTransfer(TransferRecord record) {
+        synchronized (journalLock) {
+            TransferTask live = transferScheduler.findByJournalId(record.getId());
+            if (live != null) {
+                return live;
+            }
+            return transferScheduler.submit(createTask(record, null));
         }
+    }
+
+    private void submitJournaled(TransferRecord record, RepositoryCallback<String> callback) {
+        record.setStatus(TransferTask.State.QUEUED);
+        record.setUpdatedAt(System.currentTimeMillis());
+        executor.execute(() -> {
+            // A worker that already sees the new row waits here until the task is live, so it
+            // finds the task instead of submitting the same entry a second time.
+            synchronized (journalLock) {
+                record.setId(transferDao.insert(record));
+                transferScheduler.submit(createTask(record, callback));
+            }
+            // The worker only acts if this process dies before the transfer finishes.
+            TransferWorker.enqueue(context);
+        });
+    }
+
+    private TransferTask createTask(TransferRecord record, RepositoryCallback<String> callback) {
+        final boolean isUpload = record.getDirection() == TransferTask.Direction.UPLOAD;
+        final String filename = record.getFilename();
+        final int notificationId = (int) record.getId();
+
+        TransferTask.Work work = task -> {
+            transferDao.updateStatus(record.getId(), TransferTask.State.RUNNING, System.currentTimeMillis());
+            if (isUpload) {
+                runUpload(record, task);
+            } else {
+                runDownload(record, task);
+            }
+            transferDao.delete(record.getId());
+        };
 
-        downloadService.downloadFile(filename).enqueue(new Callback<ResponseBody>() {
+        return new TransferTask(filename, record.getDirection(), record.getPriority(), record.getId(), work, new TransferTask.Listener() {
             @Override
-            public void onResponse(@NonNull Call<ResponseBody> call, @NonNull Response<ResponseBody> response) {
-                builder.setOngoing(false);
-                if (response.isSuccessful() && response.body() != null) {
-                    new Thread(() -> {
-                        boolean success = writeResponseBodyToDisk(response.body(), filename);
-                        new Handler(Looper.getMainLooper()).post(() -> {
-                            if (success) {
-                                builder.setContentText("Download complete").setProgress(0, 0, false).setSmallIcon(android.R.drawable.stat_sys_download_done);
-                                callback.onSuccess(filename + " downloaded.");
-                            } else {
-                                builder.setContentText("Download failed").setProgress(0, 0, false);
-                                callback.onError("Failed to save file.");
-                            }
-                            if (ActivityCompat.checkSelfPermission(context, Manifest.permission.POST_NOTIFICATIONS) == PackageManager.PERMISSION_GRANTED) {
-                                notificationManager.notify(notificationId, builder.build());
-                            }
-                        });
-                    }).start();
+            public void onStarted(TransferTask task) {
+                TransferProgressDispatcher.getInstance(context).track(task, notificationId);
+            }
+
+            @Override
+            public void onFinished(TransferTask task, IOException error) {
+                TransferProgressDispatcher dispatcher = TransferProgressDispatcher.getInstance(context);
+                if (error == null) {
+                    dispatcher.finish(task, true, isUpload ? "Upload complete" : "Download complete");
+                    if (isUpload) {
+                        invalidateListing();
+                    }
+                    if (callback != null) {
+                        callback.onSuccess(isUpload ? "Upload successful!" : filename + " downloaded.");
+                    }
                 } else {
-                    builder.setContentText("Download failed").setProgress(0, 0, false);
-                    if (ActivityCompat.checkSelfPermission(context, Manifest.permission.POST_NOTIFICATIONS) == PackageManager.PERMISSION_GRANTED) {
-                        notificationManager.notify(notificationId, builder.build());
+                    Log.e(TAG, "Transfer of " + filename + " failed", error);
+                    recordFailure(record);
+                    dispatcher.finish(task, false, isUpload ? "Upload failed" : "Download failed");
+                    if (callback != null) {
+                        callback.onError((isUpload ? "Upload error: " : "Download error: ") + error.getMessage());
                     }
-                    callback.onError("Download failed. Code: " + response.code());
                 }
             }
+        });
+    }
 
-            @Override
-            public void onFailure(@NonNull Call<ResponseBody> call, @NonNull Throwable t) {
-                builder.setOngoing(false).setContentText("Download failed").setProgress(0, 0, false);
-                if (ActivityCompat.checkSelfPermission(context, Manifest.permission.POST_NOTIFICATIONS) == PackageManager.PERMISSION_GRANTED) {
-                    notificationManager.notify(notificationId, builder.build());
-                }
-                callback.onError("Download error: " + t.getMessage());
+    // Keeps the entry queued for the worker until it has failed too often.
+    private void recordFailure(TransferRecord record) {
+        executor.execute(() -> {
+            TransferTask.State next = record.getAttempts() + 1 >= MAX_TRANSFER_ATTEMPTS
+                ? TransferTask.State.FAILED : TransferTask.State.QUEUED;
+            record.setAttempts(record.getAttempts() + 1);
+            transferDao.recordFailedAttempt(record.getId(), next, System.currentTimeMillis());
+            if (next == TransferTask.State.QUEUED) {
+                TransferWorker.enqueue(context);
+            } else if (record.getDirection() == TransferTask.Direction.UPLOAD) {
+                // Given up for good, so nothing will open the Uri again.
+                releaseUriPermission(Uri.parse(record.getSource()));
             }
         });
     }
+
+    private void runUpload(TransferRecord record, TransferTask task) throws IOException {
+        Uri fileUri = Uri.parse(record.getSource());
+        // Only records the counters; the TransferProgressDispatcher turns them into notifications.
+        ProgressRequestBody.ProgressListener progressListener = task::setProgress;
+
+        // A resumed session has already sent part of the body; hashing it all again would not pay off.
+        String contentHash = record.getUploadId() == null ? hashContent(fileUri, record.getTotalBytes()) : null;
+        if (contentHash != null && storeByHash(record, contentHash)) {
+            task.setProgress(record.getTotalBytes(), record.getTotalBytes());
+        } else {
+            sendContent(record, fileUri, contentHash, progressListener);
+        }
+        if (contentHash != null) {
+            fileDao.setContentHash(record.getFilename(), contentHash, record.getTotalBytes());
+        }
+        // Only now: after a pause or a failed attempt the journal still needs to open the Uri.
+        releaseUriPermission(fileUri);
+    }
+
+    private void sendContent(TransferRecord record, Uri fileUri, String contentHash,
+                             ProgressRequestBody.ProgressListener progressListener) throws IOException {
+        if (record.getTotalBytes() >= CHUNKED_UPLOAD_THRESHOLD) {
+            try {
+                uploadChunked(record, fileUri, progressListener);
+                return;
+            } catch (ChunkedUploader.UnsupportedException e) {
+                // Older servers only know the single multipart request.
+                Log.i(TAG, e.getMessage());
+            }
+        }
+        uploadMultipart(fileUri, record.getFilename(), record.getTotalBytes(), contentHash, progressListener);
+    }
+
+    // The SHA-256 of the file, or null if it cannot be read (the upload itself will then report why).
+    private String hashContent(Uri fileUri, long size) throws InterruptedIOException {
+        try {
+            return ContentHasher.sha256(context.getContentResolver(), fileUri, size);
+        } catch (InterruptedIOException e) {
+            // Paused while hashing.
+            throw e;
+        } catch (IOException | SecurityException e) {
+            Log.w(TAG, "Cannot hash " + fileUri, e);
+            return null;
+        }
+    }
+
+    /**
+     * Completes the upload without sending the body if the content is already stored:
+     * either this file is cached with the same hash, or the server knows the hash and
+     * stores the file from the content it has.
+     *
+     * @return false if the body has to be uploaded after all.
+     */
+    private boolean storeByHash(TransferRecord record, String contentHash) throws IOException {
+        if (fileDao.hasFileWithHash(record.getFilename(), contentHash)) {
+            Log.d(TAG, record.getFilename() + " is already uploaded");
+            return true;
+        }
+        if (dedupUnsupported) {
+            return false;
+        }
+        Response<UploadResponse> response = transferApiService.uploadByHash(
+            new DedupUploadRequest(record.getFilename(), contentHash, record.getTotalBytes())).execute();
+        if (response.isSuccessful()) {
+            return true;
+        }
+        if (response.errorBody() != null) response.errorBody().close();
+        if (response.code() == 404 || response.code() == 405) {
+            // Not worth a round trip per upload until the app restarts.
+            dedupUnsupported = true;
+        }
+        return false;
+    }
+
+    // Streams the file in chunks through an upload session, resuming the journaled session if there is one.
+    private void uploadChunked(TransferRecord record, Uri fileUri,
+                               ProgressRequestBody.ProgressListener progressListener) throws IOException {
+        ChunkedUploader.SessionListener sessionListener = new ChunkedUploader.SessionListener() {
+            @Override
+            public void onSessionCreated(String uploadId) {
+                record.setUploadId(uploadId);
+                transferDao.updateProgress(record.getId(), 0, record.getTotalBytes(), uploadId, System.currentTimeMillis());
+            }
+
+            @Override
+            public void onChunkAcknowledged(String uploadId, long confirmedOffset, long totalBytes) {
+                record.setConfirmedOffset(confirmedOffset);
+                transferDao.updateProgress(record.getId(), confirmedOffset, totalBytes, uploadId, System.currentTimeMillis());
+            }
+        };
+
+        // On failure the session stays journaled, so the next attempt resumes from the last acknowledged chunk.
+        chunkedUploader.upload(fileUri, record.getFilename(), record.getTotalBytes(), record.getUploadId(), sessionListener, progressListener);
+    }
+
+    private void uploadMultipart(Uri fileUri, String originalFileName, long fileSize, String contentHash,
+                                 ProgressRequestBody.ProgressListener progressListener) throws IOException {
+        // Stream straight from the provider when it can be re-read; stage a copy only when it cannot.
+        File tempFile = null;
+        ProgressRequestBody requestBody;
+        ContentResolver resolver = context.getContentResolver();
+        if (ProgressRequestBody.canStream(resolver, fileUri, fileSize)) {
+            requestBody = new ProgressRequestBody(resolver, fileUri, fileSize, progressListener);
+        } else {
+            tempFile = createTempFileFromUri(fileUri);
+            if (tempFile == null) {
+                throw new IOException("Failed to read file for upload.");
+            }
+            requestBody = new ProgressRequestBody(tempFile, progressListener);
+        }
+
+        try {
+            MultipartBody.Builder multipart = new MultipartBody.Builder()
+                .setType(MultipartBody.FORM)
+                .addFormDataPart("file", originalFileName, requestBody);
+            // Lets the server index the content for later uploads by hash; older servers ignore it.
+            if (contentHash != null) {
+                multipart.addFormDataPart("sha256", contentHash);
+            }
+            MultipartBody multipartBody = multipart.build();
+
+            Response<UploadResponse> response = transferApiService.uploadFile(multipartBody).execute();
+            if (!response.isSuccessful()) {
+                throw new IOException("Upload failed. Code: " + response.code());
+            }
+        } finally {
+            if (tempFile != null && !tempFile.delete()) {
+                Log.w(TAG, "Could not delete " + tempFile);
+            }
+        }
+    }
+
+    private void runDownload(TransferRecord record, TransferTask task) throws IOException {
+        String filename = record.getSource();
+        DownloadProgressListener progressListener = task::setProgress;
+
+        // Bytes are collected in app storage and only published to Downloads once complete.
+        // On failure the partial file is kept, so the next attempt resumes where this one stopped.
+        File partialFile = new File(record.getDestination());
+        try {
+            resumableDownloader.download(filename, partialFile, cachedSize(filename), progressListener);
+        } finally {
+            transferDao.updateProgress(record.getId(), partialFile.length(), task.getTotalBytes(), null, System.currentTimeMillis());
+        }
+        if (!publishToDownloads(partialFile, filename)) {
+            throw new IOException("Failed to save file.");
+        }
+        ResumableDownloader.discard(partialFile);
+    }
+
+    // Blocking. The size the listing reported, or -1 if the file is not cached.
+    private long cachedSize(String filename) {
+        Long size = fileDao.getSize(filename);
+        return size != null ? size : -1;
+    }
+
+    private void releaseUriPermission(Uri uri) {
+        try {
+            context.getContentResolver().releasePersistableUriPermission(uri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        } catch (SecurityException ignored) {
+            // Nothing was persisted for this Uri.
+        }
+    }
+
+    // Downloads a file the user is opening; it jumps ahead of every queued transfer.
     public void downloadFileToCache(String filename, RepositoryCallback<File> callback) {
         if (!isNetworkAvailable()) {
             callback.onError("Offline: Cannot open file.");
@@ -264,69 +1200,170 @@ public class FileRepository {
             Toast.makeText(context, "Preparing to open " + filename, Toast.LENGTH_SHORT).show()
         );
 
-        ApiService downloadService = RetrofitClient.getDownloadApiService(context, null); // No progress listener needed for this simple download.
+        // Create the file in app's private cache directory, next to its partial file
+        // so publishing is a plain rename on the same filesystem.
+        final File cacheFile = new File(context.getCacheDir(), filename);
+        TransferTask.Work work = task -> {
+            File partialFile = new File(context.getCacheDir(), filename + ResumableDownloader.PARTIAL_SUFFIX);
+            resumableDownloader.download(filename, partialFile, cachedSize(filename), task::setProgress);
+            if (cacheFile.exists() && !cacheFile.delete()) {
+                throw new IOException("Cannot replace " + cacheFile);
+            }
+            if (!partialFile.renameTo(cacheFile)) {
+                throw new IOException("Cannot publish " + cacheFile);
+            }
+            ResumableDownloader.discard(partialFile);
+        };
 
-        downloadService.downloadFile(filename).enqueue(new Callback<ResponseBody>() {
+        transferScheduler.submit(new TransferTask(filename, TransferTask.Direction.DOWNLOAD, TransferTask.Priority.USER_OPENED, work, new TransferTask.Listener() {
             @Override
-            public void onResponse(@NonNull Call<ResponseBody> call, @NonNull Response<ResponseBody> response) {
-                if (response.isSuccessful() && response.body() != null) {
-                    // Run the file writing on a background thread.
-                    executor.execute(() -> {
-                        // Create a file in app's private cache directory.
-                        File cacheFile = new File(context.getCacheDir(), filename);
-                        try (InputStream inputStream = response.body().byteStream();
-                             OutputStream outputStream = new FileOutputStream(cacheFile)) {
-
-                            byte[] buffer = new byte[4096];
-                            int bytesRead;
-                            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                                outputStream.write(buffer, 0, bytesRead);
-                            }
-                            // Report success on the main thread, returning the File object.
-                            new Handler(Looper.getMainLooper()).post(() -> callback.onSuccess(cacheFile));
+            public void onStarted(TransferTask task) {
+            }
 
-                        } catch (IOException e) {
-                            Log.e(TAG, "Failed to save file to cache", e);
-                            new Handler(Looper.getMainLooper()).post(() -> callback.onError("Failed to open file."));
-                        }
-                    });
+            @Override
+            public void onFinished(TransferTask task, IOException error) {
+                if (error == null) {
+                    // Report success, returning the File object.
+                    callback.onSuccess(cacheFile);
                 } else {
-                    callback.onError("Failed to download file. Code: " + response.code());
+                    Log.e(TAG, "Failed to save file to cache", error);
+                    callback.onError("Failed to open file.");
                 }
             }
+        }));
+    }
+
+    /**
+     * Downloads the selected files as one zip that the server streams while it builds it:
+     * one request instead of one per file, and no per-request round trips in between.
+     * The filenames are streamed into the request body from Room as it is sent, so an
+     * "all except" selection is never held in memory either.
+     * Callbacks run on the main thread.
+     *
+     * @param expand Unpack the zip into Downloads while it arrives, instead of saving the zip itself.
+     */
+    public void downloadArchive(SelectionModel selection, boolean expand, ArchiveDownloadCallback callback) {
+        if (!isNetworkAvailable()) {
+            callback.onError("Offline: Cannot download files.");
+            return;
+        }
 
+        final String archiveName = "cloud-files-" + System.currentTimeMillis() + ".zip";
+        final int[] saved = {0};
+        final int notificationId = untrackedNotificationIds.getAndDecrement();
+        TransferTask.Work work = task -> saved[0] = archiveDownloader.download(
+            new SelectionRequestBody(selection), archiveName, expand, task::setProgress);
+
+        transferScheduler.submit(new TransferTask(archiveName, TransferTask.Direction.DOWNLOAD, TransferTask.Priority.EXPLICIT, work, new TransferTask.Listener() {
             @Override
-            public void onFailure(@NonNull Call<ResponseBody> call, @NonNull Throwable t) {
-                callback.onError("Network error while opening file: " + t.getMessage());
+            public void onStarted(TransferTask task) {
+                TransferProgressDispatcher.getInstance(context).track(task, notificationId);
             }
-        });
+
+            @Override
+            public void onFinished(TransferTask task, IOException error) {
+                TransferProgressDispatcher dispatcher = TransferProgressDispatcher.getInstance(context);
+                if (error == null) {
+                    dispatcher.finish(task, true, "Download complete");
+                    callback.onSuccess(expand ? saved[0] + " file(s) downloaded." : archiveName + " downloaded.");
+                } else if (error instanceof ArchiveDownloader.UnsupportedException) {
+                    dispatcher.finish(task, false, "Download failed");
+                    callback.onUnsupported();
+                } else {
+                    Log.e(TAG, "Archive download failed", error);
+                    dispatcher.finish(task, false, "Download failed");
+                    callback.onError("Download error: " + error.getMessage());
+                }
+            }
+        }));
     }
 
-    private boolean writeResponseBodyToDisk(ResponseBody body, String filename) {
-        try {
-            ContentValues values = new ContentValues();
-            values.put(MediaStore.MediaColumns.DISPLAY_NAME, filename);
-            values.put(MediaStore.MediaColumns.MIME_TYPE, getMimeType(filename));
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                values.put(MediaStore.MediaColumns.RELATIVE_PATH, Environment.DIRECTORY_DOWNLOADS);
-            }
-            Uri uri = context.getContentResolver().insert(MediaStore.Downloads.EXTERNAL_CONTENT_URI, values);
-            if (uri == null) return false;
-            try (OutputStream outputStream = context.getContentResolver().openOutputStream(uri);
-                 InputStream inputStream = body.byteStream()) {
-                if (outputStream == null) return false;
-                byte[] buffer = new byte[4096];
-                int bytesRead;
-                while ((bytesRead = inputStream.read(buffer)) != -1) {
-                    outputStream.write(buffer, 0, bytesRead);
+    public interface ArchiveDownloadCallback {
+        void onSuccess(String message);
+        // The server cannot build archives; nothing was downloaded.
+        void onUnsupported();
+        void onError(String message);
+    }
+
+    /**
+     * {"filenames": [...]} for the selection, written batch by batch as OkHttp sends it.
+     * Runs on the transfer thread; a retried request simply walks the selection again.
+     */
+    private class SelectionRequestBody extends RequestBody {
+        private final SelectionModel selection;
+
+        SelectionRequestBody(SelectionModel selection) {
+            this.selection = selection;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return MediaType.get("application/json; charset=utf-8");
+        }
+
+        @Override
+        public void writeTo(@NonNull BufferedSink sink) throws IOException {
+            JsonWriter writer = new JsonWriter(new OutputStreamWriter(sink.outputStream(), StandardCharsets.UTF_8));
+            writer.beginObject().name("filenames").beginArray();
+            try {
+                walkSelected(selection, batch -> {
+                    try {
+                        for (String filename : batch) {
+                            writer.value(filename);
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            writer.endArray().endObject();
+            // Flushes into the sink without closing it; OkHttp owns the sink.
+            writer.flush();
+        }
+    }
+
+    /**
+     * Copies a completed download into the public Downloads collection.
+     * The MediaStore row stays pending (invisible to other apps) until every byte is written,
+     * and is removed again if the copy fails, so no half-written file is ever left behind.
+     */
+    private boolean publishToDownloads(File completeFile, String filename) {
+        ContentValues values = new ContentValues();
+        values.put(MediaStore.MediaColumns.DISPLAY_NAME, filename);
+        values.put(MediaStore.MediaColumns.MIME_TYPE, getMimeType(filename));
+        values.put(MediaStore.MediaColumns.RELATIVE_PATH, Environment.DIRECTORY_DOWNLOADS);
+        values.put(MediaStore.MediaColumns.IS_PENDING, 1);
+
+        ContentResolver resolver = context.getContentResolver();
+        Uri uri = resolver.insert(MediaStore.Downloads.EXTERNAL_CONTENT_URI, values);
+        if (uri == null) return false;
+
+        try (ParcelFileDescriptor descriptor = resolver.openFileDescriptor(uri, "w");
+             FileChannel in = new FileInputStream(completeFile).getChannel()) {
+            if (descriptor == null) throw new IOException("Cannot open " + uri);
+            try (FileChannel out = new FileOutputStream(descriptor.getFileDescriptor()).getChannel()) {
+                long size = in.size();
+                long position = 0;
+                while (position < size) {
+                    position += in.transferTo(position, size - position, out);
                 }
-                outputStream.flush();
-                return true;
             }
         } catch (IOException e) {
             Log.e(TAG, "Failed to save downloaded file", e);
+            resolver.delete(uri, null, null);
             return false;
         }
+
+        ContentValues publish = new ContentValues();
+        publish.put(MediaStore.MediaColumns.IS_PENDING, 0);
+        resolver.update(uri, publish, null, null);
+        return true;
+    }
+
+    private File getPartialDownloadDir() {
+        return new File(context.getFilesDir(), "partial_downloads");
     }
 
     private String getMimeType(String filename) {
@@ -351,13 +1388,27 @@ public class FileRepository {
         return (fileName != null) ? fileName : "upload_" + System.currentTimeMillis();
     }
 
+    // Returns the size reported by the provider, or -1 when it is unknown.
+    private long getFileSizeFromUri(Uri uri) {
+        try (Cursor cursor = context.getContentResolver().query(uri, new String[]{OpenableColumns.SIZE}, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                int sizeIndex = cursor.getColumnIndex(OpenableColumns.SIZE);
+                if (sizeIndex != -1 && !cursor.isNull(sizeIndex)) {
+                    return cursor.getLong(sizeIndex);
+                }
+            }
+        }
+        return -1;
+    }
+
     private File createTempFileFromUri(Uri uri) {
         try {
             InputStream inputStream = context.getContentResolver().openInputStream(uri);
             if(inputStream == null) return null;
-            File tempFile = new File(context.getCacheDir(), "upload_temp.tmp");
+            // Each upload gets its own staging file, so concurrent uploads never overwrite each other.
+            File tempFile = File.createTempFile("upload_", ".tmp", context.getCacheDir());
             try (OutputStream outputStream = new FileOutputStream(tempFile)) {
-                byte[] buffer = new byte[4 * 1024];
+                byte[] buffer = new byte[64 * 1024];
                 int read;
                 while ((read = inputStream.read(buffer)) != -1) {
                     outputStream.write(buffer, 0, read);
@@ -0,0 +1,24 @@
+package com.andreas.personalcloudclient;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Fts4;
+import androidx.room.FtsOptions;
+
+/**
+ * The full-text index of the cached filenames.
+ * It is an external-content table over "files": Room keeps it in sync with triggers,
+ * so every insert, update and delete of a file updates the index in the same statement.
+ * unicode61 splits names on punctuation ("holiday_photo-2023.jpg" -> holiday, photo, 2023, jpg)
+ * and ignores case and accents.
+ */
+@Fts4(contentEntity = FileMetadata.class, tokenizer = FtsOptions.TOKENIZER_UNICODE61)
+@Entity(tableName = "files_fts")
+public class FileSearchEntry {
+
+    @ColumnInfo(name = "filename")
+    private String filename;
+
+    public String getFilename() { return filename; }
+    public void setFilename(String filename) { this.filename = filename; }
+}
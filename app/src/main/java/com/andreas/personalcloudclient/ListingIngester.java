@@ -0,0 +1,134 @@
+package com.andreas.personalcloudclient;
+
+import android.util.Log;
+
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.ResponseBody;
+
+/**
+ * Streams a page of the /files listing into Room without holding it in memory.
+ * The JSON array is read one object at a time and written in batches of {@link #BATCH_SIZE};
+ * only rows whose metadata changed are written. The filenames seen are collected in a temp
+ * table, and afterwards the rows of the page's key range that were not seen are deleted.
+ * Each batch is parsed from the network first and then written in its own short transaction,
+ * so a slow connection never holds the write lock and the UI can query between batches.
+ * An interrupted page leaves its written batches in place (they are current server data)
+ * and skips the deletion; the listing is not marked validated, so the next sync fetches it again.
+ * Blocking; call it on a background thread.
+ */
+public class ListingIngester {
+
+    private static final String TAG = "ListingIngester";
+
+    // Rows per write; stays below SQLite's bind-variable limit for the IN lookups.
+    static final int BATCH_SIZE = 500;
+
+    // Called on the ingesting thread after every batch.
+    public interface ProgressListener {
+        void onProgress(int filesIngested);
+    }
+
+    // Decides, once the page is read, whether it was the last one.
+    public interface LastPagePolicy {
+        boolean isLastPage(int count, String firstFilename);
+    }
+
+    // What the page contained, so the caller can decide whether to fetch the next one.
+    public static class Result {
+        public final int count;
+        public final String firstFilename;
+        // The greatest filename in the page; the next page starts after it.
+        public final String lastFilename;
+        public final boolean lastPage;
+        public final int rowsWritten;
+
+        Result(int count, String firstFilename, String lastFilename, boolean lastPage, int rowsWritten) {
+            this.count = count;
+            this.firstFilename = firstFilename;
+            this.lastFilename = lastFilename;
+            this.lastPage = lastPage;
+            this.rowsWritten = rowsWritten;
+        }
+    }
+
+    private final AppDatabase database;
+    private final FileDao fileDao;
+    private final Gson gson = new Gson();
+
+    public ListingIngester(AppDatabase database) {
+        this.database = database;
+        this.fileDao = database.fileDao();
+    }
+
+    /**
+     * Ingests one page and deletes the cached rows of its key range that it did not contain.
+     * Pages are ingested one at a time, because the temp table of seen filenames belongs to
+     * the database connection rather than to the call.
+     *
+     * @param after          The key range starts after this filename ("" for the first page).
+     * @param lastPagePolicy Decides the end of the range once the page is read: a last page owns
+     *                       everything after {@code after}, any other page ends at its greatest filename.
+     */
+    public synchronized Result ingest(ResponseBody body, String after, LastPagePolicy lastPagePolicy,
+                                      ProgressListener listener) throws IOException {
+        SupportSQLiteDatabase db = database.getOpenHelper().getWritableDatabase();
+        db.execSQL("CREATE TEMP TABLE IF NOT EXISTS listing_seen (filename TEXT PRIMARY KEY)");
+        db.execSQL("DELETE FROM listing_seen");
+
+        int count = 0;
+        int written = 0;
+        String first = null;
+        String max = after;
+        List<FileMetadata> batch = new ArrayList<>(BATCH_SIZE);
+        try (Reader charStream = body.charStream(); JsonReader reader = new JsonReader(charStream)) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                FileMetadata file = gson.fromJson(reader, FileMetadata.class);
+                if (file == null || file.getFilename() == null) continue;
+                if (first == null) first = file.getFilename();
+                if (file.getFilename().compareTo(max) > 0) max = file.getFilename();
+                batch.add(file);
+                count++;
+                if (batch.size() == BATCH_SIZE) {
+                    written += writeBatch(db, batch);
+                    batch.clear();
+                    if (listener != null) listener.onProgress(count);
+                }
+            }
+            reader.endArray();
+        }
+        if (!batch.isEmpty()) {
+            written += writeBatch(db, batch);
+            if (listener != null) listener.onProgress(count);
+        }
+
+        // Whatever in the page's key range was not in the page is gone on the server.
+        boolean lastPage = lastPagePolicy.isLastPage(count, first);
+        String range = lastPage ? "filename > ?" : "filename > ? AND filename <= ?";
+        Object[] args = lastPage ? new Object[]{after} : new Object[]{after, max};
+        written += db.delete("files", range + " AND filename NOT IN (SELECT filename FROM listing_seen)", args);
+        db.execSQL("DELETE FROM listing_seen");
+
+        Log.d(TAG, "Ingested " + count + " files after '" + after + "', " + written + " rows written");
+        return new Result(count, first, max, lastPage, written);
+    }
+
+    // The batch is already parsed, so the transaction only covers the database work.
+    private int writeBatch(SupportSQLiteDatabase db, List<FileMetadata> batch) {
+        return database.runInTransaction(() -> {
+            for (FileMetadata file : batch) {
+                db.execSQL("INSERT OR IGNORE INTO listing_seen (filename) VALUES (?)", new Object[]{file.getFilename()});
+            }
+            return fileDao.upsertChanged(batch);
+        });
+    }
+}
@@ -2,6 +2,7 @@ package com.andreas.personalcloudclient;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.SearchView;
 import androidx.core.content.FileProvider;
 import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.GridLayoutManager;
@@ -12,6 +13,7 @@ import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
 
 import android.content.ActivityNotFoundException;
+import android.content.ClipData;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
@@ -26,7 +28,8 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import java.io.File;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
 
 public class MainActivity extends AppCompatActivity implements FileAdapter.OnFileClickListener {
 
@@ -40,11 +43,14 @@ public class MainActivity extends AppCompatActivity implements FileAdapter.OnFil
 
     private String baseUrl;
 
+    // Uris of files to upload right away, e.g. from a share intent.
+    public static final String EXTRA_UPLOAD_URIS = "com.andreas.personalcloudclient.UPLOAD_URIS";
+
     private final ActivityResultLauncher<Intent> filePickerLauncher = registerForActivityResult(
         new ActivityResultContracts.StartActivityForResult(),
         result -> {
             if (result.getResultCode() == RESULT_OK && result.getData() != null) {
-                viewModel.uploadFile(result.getData().getData());
+                uploadUris(pickedUris(result.getData()));
             } else {
                 Toast.makeText(this, "File selection cancelled", Toast.LENGTH_SHORT).show();
             }
@@ -62,6 +68,14 @@ public class MainActivity extends AppCompatActivity implements FileAdapter.OnFil
         setupObservers();
 
         viewModel.loadFileList();
+
+        // Files shared into the app through SplashActivity; only once, not again after a rotation.
+        if (savedInstanceState == null) {
+            ArrayList<Uri> shared = getIntent().getParcelableArrayListExtra(EXTRA_UPLOAD_URIS);
+            if (shared != null) {
+                uploadUris(shared);
+            }
+        }
     }
 
     private void setupUI() {
@@ -70,26 +84,40 @@ public class MainActivity extends AppCompatActivity implements FileAdapter.OnFil
         recyclerView = findViewById(R.id.recyclerViewFiles);
 
         fileAdapter = new FileAdapter(baseUrl);
+        fileAdapter.setPager(viewModel.getFilePager());
 
         recyclerView.setAdapter(fileAdapter);
         // Start with a Grid Layout
         recyclerView.setLayoutManager(new GridLayoutManager(this, 2));
         fileAdapter.setOnFileClickListener(this);
 
+        // Search results arrive a page at a time; ask for the next one near the end of the list.
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView view, int dx, int dy) {
+                if (viewModel.searchResults.getValue() == null) return;
+                LinearLayoutManager layoutManager = (LinearLayoutManager) view.getLayoutManager();
+                if (layoutManager != null
+                    && layoutManager.findLastVisibleItemPosition() >= fileAdapter.getItemCount() - 10) {
+                    viewModel.loadMoreSearchResults();
+                }
+            }
+        });
+
         swipeRefreshLayout.setOnRefreshListener(() -> {
             // When the user swipes, tell the ViewModel to reload the file list.
             // The loading indicator will be handled by the observer below.
-            viewModel.loadFileList();
+            viewModel.refreshFileList();
         });
 
     }
 
     private void setupObservers() {
-        viewModel.fileList.observe(this, files -> {
-            if (files != null) {
-                fileAdapter.setFiles(files);
-                findViewById(R.id.textViewEmpty).setVisibility(files.isEmpty() ? View.VISIBLE : View.GONE);
-                recyclerView.setVisibility(files.isEmpty() ? View.GONE : View.VISIBLE);
+        // The adapter follows the pager itself; only the empty state is driven from here.
+        viewModel.fileCount.observe(this, count -> {
+            if (count != null) {
+                findViewById(R.id.textViewEmpty).setVisibility(count == 0 ? View.VISIBLE : View.GONE);
+                recyclerView.setVisibility(count == 0 ? View.GONE : View.VISIBLE);
             }
         });
 
@@ -116,19 +144,25 @@ public class MainActivity extends AppCompatActivity implements FileAdapter.OnFil
             }
         });
 
-        viewModel.selectedItems.observe(this, selection -> {
+        viewModel.selection.observe(this, selection -> {
             if (selection != null) {
-                fileAdapter.setSelectionMode(selection);
+                fileAdapter.setSelection(selection);
                 if (actionMode != null) {
-                    actionMode.setTitle(selection.size() + " selected");
+                    int selectedCount = selection.count(viewModel.getFileCount());
+                    actionMode.setTitle(selectedCount + " selected");
                     // If all items are deselected, the action mode should finish.
-                    if (selection.isEmpty()) {
+                    if (selectedCount == 0) {
                         actionMode.finish();
                     }
                 }
             }
         });
 
+        viewModel.searchResults.observe(this, results -> fileAdapter.setSearchResults(results));
+
+        viewModel.transferProgress.observe(this, progress -> updateSubtitle());
+        viewModel.syncProgress.observe(this, filesIngested -> updateSubtitle());
+
         viewModel.isSelectionModeActive.observe(this, isActive -> {
             if (isActive != null && !isActive && actionMode != null) {
                 actionMode.finish();
@@ -136,12 +170,74 @@ public class MainActivity extends AppCompatActivity implements FileAdapter.OnFil
         });
     }
 
+    // Transfers take precedence; a long listing sync shows its progress otherwise.
+    private void updateSubtitle() {
+        if (getSupportActionBar() == null) return;
+        TransferScheduler.AggregateProgress progress = viewModel.transferProgress.getValue();
+        Integer filesIngested = viewModel.syncProgress.getValue();
+        int active = progress != null ? progress.running + progress.queued + progress.paused : 0;
+        if (active > 0 && progress.paused > 0 && progress.running == 0) {
+            getSupportActionBar().setSubtitle(active + " transfer(s) paused");
+        } else if (active > 0) {
+            getSupportActionBar().setSubtitle(progress.running + " running, " + progress.queued + " queued - " + progress.getPercent() + "%");
+        } else if (filesIngested != null) {
+            getSupportActionBar().setSubtitle("Syncing... " + filesIngested + " files");
+        } else {
+            getSupportActionBar().setSubtitle(null);
+        }
+    }
+
     // --- Inflate the options menu from XML ---
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.main_menu, menu);
         // Find the specific menu item for toggling layout
         toggleLayoutMenuItem = menu.findItem(R.id.action_more).getSubMenu().findItem(R.id.action_toggle_layout);
+
+        // The pager keeps its sort and filter across rotations; check the matching items again.
+        Menu moreMenu = menu.findItem(R.id.action_more).getSubMenu();
+        FileQuery query = viewModel.getFileQuery();
+        switch (query.getSort()) {
+            case NEWEST: moreMenu.findItem(R.id.action_sort_newest).setChecked(true); break;
+            case LARGEST: moreMenu.findItem(R.id.action_sort_largest).setChecked(true); break;
+            default: moreMenu.findItem(R.id.action_sort_name).setChecked(true); break;
+        }
+        if (query.getFileType() != null) {
+            for (int i = 0; i < moreMenu.size(); i++) {
+                MenuItem filterItem = moreMenu.getItem(i);
+                if (filterItem.getGroupId() == R.id.group_filter && query.getFileType().equals(typeOfFilter(filterItem.getItemId()))) {
+                    filterItem.setChecked(true);
+                }
+            }
+        }
+
+        // Search-as-you-type; the ViewModel debounces the keystrokes.
+        MenuItem searchItem = menu.findItem(R.id.action_search);
+        SearchView searchView = (SearchView) searchItem.getActionView();
+        searchView.setQueryHint("Search files");
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                searchView.clearFocus();
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                viewModel.setSearchQuery(newText);
+                return true;
+            }
+        });
+        searchItem.setOnActionExpandListener(new MenuItem.OnActionExpandListener() {
+            @Override
+            public boolean onMenuItemActionExpand(@NonNull MenuItem item) { return true; }
+
+            @Override
+            public boolean onMenuItemActionCollapse(@NonNull MenuItem item) {
+                viewModel.setSearchQuery(null);
+                return true;
+            }
+        });
         return true;
     }
 
@@ -156,18 +252,51 @@ public class MainActivity extends AppCompatActivity implements FileAdapter.OnFil
         } else if (id == R.id.action_toggle_layout) {
             toggleLayout();
             return true;
+        } else if (id == R.id.action_pause_transfers) {
+            viewModel.pauseTransfers();
+            return true;
+        } else if (id == R.id.action_resume_transfers) {
+            viewModel.resumeTransfers();
+            return true;
+        } else if (id == R.id.action_sort_name) {
+            item.setChecked(true);
+            viewModel.setSortOrder(FileQuery.Sort.NAME);
+            return true;
+        } else if (id == R.id.action_sort_newest) {
+            item.setChecked(true);
+            viewModel.setSortOrder(FileQuery.Sort.NEWEST);
+            return true;
+        } else if (id == R.id.action_sort_largest) {
+            item.setChecked(true);
+            viewModel.setSortOrder(FileQuery.Sort.LARGEST);
+            return true;
+        } else if (item.getGroupId() == R.id.group_filter) {
+            item.setChecked(true);
+            viewModel.setTypeFilter(typeOfFilter(id));
+            return true;
         } else if (id == R.id.action_select_all) {
-            viewModel.selectAllFiles();
-            // Start action mode if it's not already active
+            // Start action mode if it's not already active, so it shows the new selection count
             if (actionMode == null) {
                 actionMode = startActionMode(actionModeCallback);
             }
+            viewModel.selectAllFiles();
             return true;
         }
 
         return super.onOptionsItemSelected(item);
     }
 
+    // The file_type a "Show ..." menu item filters by; null for all files.
+    private static String typeOfFilter(int itemId) {
+        if (itemId == R.id.action_filter_images) return "image";
+        if (itemId == R.id.action_filter_videos) return "video";
+        if (itemId == R.id.action_filter_audio) return "audio";
+        if (itemId == R.id.action_filter_pdf) return "pdf";
+        if (itemId == R.id.action_filter_text) return "text";
+        if (itemId == R.id.action_filter_archives) return "archive";
+        return null;
+    }
+
     // --- Logic to switch between Grid and List layout ---
     private void toggleLayout() {
         if (isGridLayout) {
@@ -250,13 +379,15 @@ public class MainActivity extends AppCompatActivity implements FileAdapter.OnFil
             if (itemId == R.id.action_delete_contextual) {
                 viewModel.deleteSelectedFiles();
                 return true;
+            } else if (itemId == R.id.action_invert_selection) {
+                viewModel.invertSelection();
+                return true;
             } else if (itemId == R.id.action_download_contextual) {
-                Set<String> selectedFiles = viewModel.selectedItems.getValue();
-                if(selectedFiles != null){
-                    for(String filename : selectedFiles){
-                        viewModel.downloadFile(filename);
-                    }
-                }
+                viewModel.downloadSelectedFiles();
+                mode.finish();
+                return true;
+            } else if (itemId == R.id.action_download_zip_contextual) {
+                viewModel.downloadSelectedAsZip();
                 mode.finish();
                 return true;
             }
@@ -271,18 +402,43 @@ public class MainActivity extends AppCompatActivity implements FileAdapter.OnFil
     };
 
     private void openFilePicker() {
-        Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+        // OPEN_DOCUMENT grants a persistable permission, so a journaled upload can reopen the file after a restart.
+        Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
         intent.setType("*/*");
         intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
         filePickerLauncher.launch(intent);
     }
 
+    // A multi-selection comes back as ClipData, a single file as the data Uri.
+    private static List<Uri> pickedUris(Intent data) {
+        List<Uri> uris = new ArrayList<>();
+        ClipData clipData = data.getClipData();
+        if (clipData != null) {
+            for (int i = 0; i < clipData.getItemCount(); i++) {
+                uris.add(clipData.getItemAt(i).getUri());
+            }
+        } else if (data.getData() != null) {
+            uris.add(data.getData());
+        }
+        return uris;
+    }
+
+    // Several files go through the bundled, parallel upload; a single file keeps its own journaled upload.
+    private void uploadUris(List<Uri> uris) {
+        if (uris.size() == 1) {
+            viewModel.uploadFile(uris.get(0));
+        } else if (!uris.isEmpty()) {
+            viewModel.uploadFiles(uris);
+        }
+    }
+
     private void openFileExternally(String filename) {
 
         viewModel.setLoadingState(true);
 
-        //Create a new instance of the repository to perform the one-off download.
-        FileRepository fileRepository = new FileRepository(getApplication());
+        // The shared repository performs the one-off download.
+        FileRepository fileRepository = FileRepository.getInstance(getApplication());
         fileRepository.downloadFileToCache(filename, new FileRepository.RepositoryCallback<File>() {
             @Override
             public void onSuccess(File file) {
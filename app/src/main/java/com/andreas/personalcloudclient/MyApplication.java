@@ -16,6 +16,9 @@ public class MyApplication extends Application {
 
         // Create notification channels for downloads/uploads (Android 8.0+)
         createNotificationChannels();
+
+        // Resume any upload/download that was journaled before the process died.
+        TransferWorker.enqueue(this);
     }
 
     private void createNotificationChannels() {
@@ -1,29 +1,83 @@
 package com.andreas.personalcloudclient;
 
-import android.os.Handler;
-import android.os.Looper;
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import androidx.annotation.NonNull;
 import okhttp3.MediaType;
 import okhttp3.RequestBody;
 import okio.BufferedSink;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 public class ProgressRequestBody extends RequestBody {
 
     private final File file;
+    private final byte[] bytes;
+    private final ContentResolver contentResolver;
+    private final Uri uri;
+    private final long length;
     private final ProgressListener listener;
-    private static final int DEFAULT_BUFFER_SIZE = 4096;
+    // A multiple of Okio's 8 KiB segment size, so every write fills whole segments.
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
 
+    // Called on the uploading thread for every write, so it must only record the numbers.
     public interface ProgressListener {
         void onProgressUpdate(long bytesUploaded, long totalBytes);
     }
 
+    // Uploads a staged file.
     public ProgressRequestBody(File file, ProgressListener listener) {
         this.file = file;
+        this.bytes = null;
+        this.contentResolver = null;
+        this.uri = null;
+        this.length = file.length();
         this.listener = listener;
     }
 
+    /**
+     * Streams straight from the content Uri, without staging a copy in the cache.
+     * Only use this when {@link #canStream} is true for the Uri.
+     *
+     * @param length The size reported by OpenableColumns.SIZE.
+     */
+    public ProgressRequestBody(ContentResolver contentResolver, Uri uri, long length, ProgressListener listener) {
+        this.file = null;
+        this.bytes = null;
+        this.contentResolver = contentResolver;
+        this.uri = uri;
+        this.length = length;
+        this.listener = listener;
+    }
+
+    // Uploads a small file that was read into memory instead of being staged on disk.
+    public ProgressRequestBody(byte[] bytes, ProgressListener listener) {
+        this.file = null;
+        this.bytes = bytes;
+        this.contentResolver = null;
+        this.uri = null;
+        this.length = bytes.length;
+        this.listener = listener;
+    }
+
+    /**
+     * True if the provider hands out a seekable file descriptor of the expected size.
+     * Pipes and sockets (statSize -1) cannot be re-read when OkHttp retries a request,
+     * so those still have to be staged.
+     */
+    public static boolean canStream(ContentResolver contentResolver, Uri uri, long length) {
+        if (length < 0) return false;
+        try (ParcelFileDescriptor descriptor = contentResolver.openFileDescriptor(uri, "r")) {
+            return descriptor != null && descriptor.getStatSize() >= length;
+        } catch (IOException | SecurityException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
     @Override
     public MediaType contentType() {
         // Can guess the media type from the file, or use a generic one
@@ -32,26 +86,50 @@ public class ProgressRequestBody extends RequestBody {
 
     @Override
     public long contentLength() {
-        return file.length();
+        return length;
     }
 
     @Override
-    public void writeTo(BufferedSink sink) throws IOException {
-        long fileLength = file.length();
-        byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
-        long uploaded = 0;
-
-        try (FileInputStream in = new FileInputStream(file)) {
-            int read;
-            Handler handler = new Handler(Looper.getMainLooper());
-            while ((read = in.read(buffer)) != -1) {
-                uploaded += read;
-                sink.write(buffer, 0, read);
+    public void writeTo(@NonNull BufferedSink sink) throws IOException {
+        if (bytes != null) {
+            for (int offset = 0; offset < bytes.length; offset += DEFAULT_BUFFER_SIZE) {
+                int count = Math.min(DEFAULT_BUFFER_SIZE, bytes.length - offset);
+                sink.write(bytes, offset, count);
+                listener.onProgressUpdate(offset + count, length);
+            }
+            return;
+        }
+        // Opened per call: OkHttp may write the body again when it retries a request.
+        if (file != null) {
+            try (FileInputStream in = new FileInputStream(file)) {
+                copy(in.getChannel(), sink);
+            }
+            return;
+        }
+        try (ParcelFileDescriptor descriptor = contentResolver.openFileDescriptor(uri, "r")) {
+            if (descriptor == null) {
+                throw new IOException("Cannot open " + uri);
+            }
+            try (FileInputStream in = new FileInputStream(descriptor.getFileDescriptor())) {
+                copy(in.getChannel(), sink);
+            }
+        }
+    }
 
-                // Post progress update back to the main thread
-                final long finalUploaded = uploaded;
-                handler.post(() -> listener.onProgressUpdate(finalUploaded, fileLength));
+    private void copy(FileChannel channel, BufferedSink sink) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(DEFAULT_BUFFER_SIZE);
+        long uploaded = 0;
+        while (uploaded < length) {
+            buffer.clear();
+            buffer.limit((int) Math.min(DEFAULT_BUFFER_SIZE, length - uploaded));
+            int read = channel.read(buffer, uploaded);
+            if (read == -1) {
+                throw new IOException("Source ended early at " + uploaded);
             }
+            buffer.flip();
+            sink.write(buffer);
+            uploaded += read;
+            listener.onProgressUpdate(uploaded, length);
         }
     }
 }
@@ -0,0 +1,283 @@
+package com.andreas.personalcloudclient;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Properties;
+
+import okhttp3.ResponseBody;
+import retrofit2.Response;
+
+/**
+ * Downloads a file into a ".partial" file that survives failures.
+ * A retry continues with an HTTP Range request guarded by If-Range, so the
+ * server only sends the missing bytes while the file is unchanged.
+ * Every call here is blocking and must run on a background thread.
+ */
+public class ResumableDownloader {
+
+    private static final String TAG = "ResumableDownloader";
+
+    public static final String PARTIAL_SUFFIX = ".partial";
+    private static final String META_SUFFIX = ".meta";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // How often the validated offset is synced to disk and recorded.
+    private static final long CHECKPOINT_BYTES = 4L * 1024 * 1024;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long RETRY_BASE_DELAY_MS = 1000;
+
+    private static final String KEY_ETAG = "etag";
+    private static final String KEY_LAST_MODIFIED = "last_modified";
+    private static final String KEY_TOTAL_LENGTH = "total_length";
+    private static final String KEY_VALIDATED_OFFSET = "validated_offset";
+
+    // The server answered with a status that a retry would only repeat, such as 404 or 403.
+    public static class PermanentFailureException extends IOException {
+        public PermanentFailureException(String message) {
+            super(message);
+        }
+    }
+
+    private final ApiService apiService;
+    private final SegmentedDownloader segmentedDownloader;
+
+    public ResumableDownloader(ApiService apiService) {
+        this.apiService = apiService;
+        this.segmentedDownloader = new SegmentedDownloader(apiService);
+    }
+
+    /**
+     * Makes sure the partial file holds the complete remote file, resuming what is already there.
+     * The caller publishes the finished file (rename or MediaStore) and then calls {@link #discard}.
+     *
+     * @param partialFile Where the bytes are collected, usually "<name>.partial".
+     * @param knownSize   The size from the cached listing, or -1. Files known to be below the
+     *                    segmented threshold skip the range probe and go straight to a single stream.
+     * @param listener    Optional; receives byte counts on the downloading thread.
+     */
+    public void download(String filename, File partialFile, long knownSize, DownloadProgressListener listener) throws IOException {
+        File parent = partialFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+
+        IOException lastError = null;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            try {
+                // Large files go over several connections unless a single-stream attempt is already underway.
+                boolean singleStreamStarted = partialFile.exists() && !SegmentedDownloader.hasSegments(partialFile);
+                boolean knownSmall = knownSize >= 0 && knownSize < SegmentedDownloader.SEGMENTED_THRESHOLD;
+                if (!singleStreamStarted && !knownSmall && segmentedDownloader.tryDownload(filename, partialFile, listener)) {
+                    return;
+                }
+                if (downloadOnce(filename, partialFile, listener)) {
+                    return;
+                }
+            } catch (PermanentFailureException e) {
+                throw e;
+            } catch (IOException e) {
+                lastError = e;
+                Log.w(TAG, "Download of " + filename + " interrupted (attempt " + attempt + ")", e);
+            }
+            sleepBeforeRetry(attempt);
+        }
+        throw lastError != null ? lastError : new IOException("Download of " + filename + " did not complete.");
+    }
+
+    // Removes the partial file and its metadata.
+    public static void discard(File partialFile) {
+        SegmentedDownloader.discard(partialFile);
+        if (partialFile.exists() && !partialFile.delete()) {
+            Log.w(TAG, "Could not delete " + partialFile);
+        }
+        File meta = metaFileFor(partialFile);
+        if (meta.exists() && !meta.delete()) {
+            Log.w(TAG, "Could not delete " + meta);
+        }
+    }
+
+    // Returns true when the partial file is complete.
+    private boolean downloadOnce(String filename, File partialFile, DownloadProgressListener listener) throws IOException {
+        Properties meta = loadMeta(partialFile);
+        String validator = validatorOf(meta);
+        long offset = validatedOffset(partialFile, meta);
+
+        // Without a validator we cannot tell whether the bytes on disk still match the server.
+        if (offset > 0 && validator == null) {
+            offset = 0;
+        }
+        String range = offset > 0 ? "bytes=" + offset + "-" : null;
+        String ifRange = offset > 0 ? validator : null;
+
+        Response<ResponseBody> response = apiService.downloadFile(filename, range, ifRange).execute();
+        ResponseBody body = response.body();
+        try {
+            if (response.code() == 416) {
+                if (range == null) {
+                    throw new PermanentFailureException("Download failed. Code: 416");
+                }
+                // Nothing left to fetch if we already hold the full length.
+                long total = Long.parseLong(meta.getProperty(KEY_TOTAL_LENGTH, "-1"));
+                if (total >= 0 && total == partialFile.length()) {
+                    return true;
+                }
+                discard(partialFile);
+                return false;
+            }
+            if (!response.isSuccessful() && !isRetryable(response.code())) {
+                throw new PermanentFailureException("Download failed. Code: " + response.code());
+            }
+            if (!response.isSuccessful() || body == null) {
+                throw new IOException("Download failed. Code: " + response.code());
+            }
+
+            long total;
+            if (response.code() == 206 && offset > 0 && startOfContentRange(response.headers().get("Content-Range")) == offset) {
+                total = totalOfContentRange(response.headers().get("Content-Range"));
+                Log.d(TAG, "Resuming " + filename + " at byte " + offset);
+            } else {
+                // A plain 200 means the file changed (If-Range failed) or the server ignores ranges.
+                offset = 0;
+                total = body.contentLength();
+                meta = new Properties();
+                String etag = response.headers().get("ETag");
+                String lastModified = response.headers().get("Last-Modified");
+                if (etag != null && !etag.startsWith("W/")) {
+                    meta.setProperty(KEY_ETAG, etag);
+                }
+                if (lastModified != null) {
+                    meta.setProperty(KEY_LAST_MODIFIED, lastModified);
+                }
+            }
+            meta.setProperty(KEY_TOTAL_LENGTH, String.valueOf(total));
+            meta.setProperty(KEY_VALIDATED_OFFSET, String.valueOf(offset));
+            saveMeta(partialFile, meta);
+
+            writeFrom(body, partialFile, meta, offset, total, listener);
+            return total < 0 || partialFile.length() == total;
+        } finally {
+            if (body != null) {
+                body.close();
+            }
+        }
+    }
+
+    private void writeFrom(ResponseBody body, File partialFile, Properties meta, long offset, long total,
+                           DownloadProgressListener listener) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(partialFile, "rw");
+             InputStream in = body.byteStream()) {
+            // Drop anything past the validated offset; it was never synced.
+            file.setLength(offset);
+            file.seek(offset);
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long position = offset;
+            long lastCheckpoint = offset;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                file.write(buffer, 0, read);
+                position += read;
+
+                if (position - lastCheckpoint >= CHECKPOINT_BYTES) {
+                    file.getFD().sync();
+                    meta.setProperty(KEY_VALIDATED_OFFSET, String.valueOf(position));
+                    saveMeta(partialFile, meta);
+                    lastCheckpoint = position;
+                }
+                if (listener != null) {
+                    listener.onBytesTransferred(position, total);
+                }
+            }
+            file.getFD().sync();
+            meta.setProperty(KEY_VALIDATED_OFFSET, String.valueOf(position));
+            saveMeta(partialFile, meta);
+        }
+    }
+
+    // The number of bytes on disk that were synced and recorded before the last interruption.
+    private static long validatedOffset(File partialFile, Properties meta) {
+        long recorded = Long.parseLong(meta.getProperty(KEY_VALIDATED_OFFSET, "0"));
+        return Math.min(recorded, partialFile.exists() ? partialFile.length() : 0);
+    }
+
+    // Prefers a strong ETag; otherwise the Last-Modified date is a valid If-Range value.
+    private static String validatorOf(Properties meta) {
+        String etag = meta.getProperty(KEY_ETAG);
+        return etag != null ? etag : meta.getProperty(KEY_LAST_MODIFIED);
+    }
+
+    // Parses "bytes 100-999/1000" into 100, or -1.
+    private static long startOfContentRange(String contentRange) {
+        if (contentRange == null || !contentRange.startsWith("bytes ")) return -1;
+        int dash = contentRange.indexOf('-');
+        if (dash < 0) return -1;
+        try {
+            return Long.parseLong(contentRange.substring(6, dash).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Parses "bytes 100-999/1000" into 1000, or -1 when the length is unknown.
+    private static long totalOfContentRange(String contentRange) {
+        int slash = contentRange.indexOf('/');
+        if (slash < 0) return -1;
+        try {
+            return Long.parseLong(contentRange.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static File metaFileFor(File partialFile) {
+        return new File(partialFile.getPath() + META_SUFFIX);
+    }
+
+    private static Properties loadMeta(File partialFile) {
+        Properties meta = new Properties();
+        File metaFile = metaFileFor(partialFile);
+        if (metaFile.exists()) {
+            try (InputStream in = new FileInputStream(metaFile)) {
+                meta.load(in);
+            } catch (IOException e) {
+                Log.w(TAG, "Ignoring unreadable " + metaFile, e);
+                meta.clear();
+            }
+        }
+        return meta;
+    }
+
+    // Writes the metadata to a temp file first so a crash never leaves it half-written.
+    private static void saveMeta(File partialFile, Properties meta) throws IOException {
+        File metaFile = metaFileFor(partialFile);
+        File tmp = new File(metaFile.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            meta.store(out, null);
+        }
+        if (!tmp.renameTo(metaFile)) {
+            throw new IOException("Cannot write " + metaFile);
+        }
+    }
+
+    // Timeouts, rate limits and server errors may pass; any other status will not change on retry.
+    static boolean isRetryable(int code) {
+        return code == 408 || code == 429 || code >= 500;
+    }
+
+    private void sleepBeforeRetry(int attempt) throws IOException {
+        if (attempt >= MAX_ATTEMPTS) return;
+        try {
+            Thread.sleep(RETRY_BASE_DELAY_MS << Math.min(attempt - 1, 4));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Download interrupted", e);
+        }
+    }
+}
@@ -2,28 +2,32 @@ package com.andreas.personalcloudclient;
 
 import android.content.Context;
 
+import java.util.Arrays;
+
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import okhttp3.logging.HttpLoggingInterceptor;
 import retrofit2.Retrofit;
 import retrofit2.converter.gson.GsonConverterFactory;
 
 public class RetrofitClient {
+    private static OkHttpClient httpClient = null;
+    private static OkHttpClient transferClient = null;
     private static Retrofit retrofit = null;
+    private static ApiService transferApiService = null;
 
     /**
-     * Gets the singleton instance of the main Retrofit client.
+     * Gets the one OkHttpClient of the app.
      * This client is configured with interceptors for logging and automatic authentication.
      * It also includes an authenticator for automatic token refreshing.
+     * Every other client is derived from it with newBuilder(), so they all share its
+     * connection pool, dispatcher threads and TLS session cache.
      *
      * @param context The application context.
-     * @return The configured Retrofit instance.
+     * @return The shared OkHttpClient.
      */
-    public static Retrofit getClient(Context context) {
-        if (retrofit == null) {
-            // The base URL is fetched from the string resources that were
-            // auto-generated by Gradle. This keeps the URL out of the source code.
-            final String BASE_URL = context.getApplicationContext().getString(R.string.api_base_url);
-
+    public static synchronized OkHttpClient getHttpClient(Context context) {
+        if (httpClient == null) {
             // 1. Set up the logging interceptor for debugging network requests.
             HttpLoggingInterceptor loggingInterceptor = new HttpLoggingInterceptor();
             loggingInterceptor.setLevel(HttpLoggingInterceptor.Level.BODY);
@@ -35,16 +39,56 @@ public class RetrofitClient {
             TokenAuthenticator tokenAuthenticator = new TokenAuthenticator(context);
 
             // 4. Build the OkHttpClient, adding all components.
-            OkHttpClient client = new OkHttpClient.Builder()
+            httpClient = new OkHttpClient.Builder()
                 .addInterceptor(authInterceptor)      // Runs first to add the token.
                 .addInterceptor(loggingInterceptor)  // Runs second to log the request with the token.
                 .authenticator(tokenAuthenticator)   // Runs ONLY if the server returns a 401 error.
+                // Offer HTTP/2 via ALPN on https, so listing, thumbnails and downloads
+                // multiplex over one connection; plain http and older servers use HTTP/1.1.
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
                 .build();
+        }
+        return httpClient;
+    }
+
+    /**
+     * Gets the client for file bodies: uploads, downloads, thumbnails and the streamed listing.
+     * It is the shared client with headers-only logging, because logging a body means
+     * buffering all of it in memory first. Calls can attach a {@link DownloadProgressListener}
+     * as a request tag (Retrofit's @Tag) to have the response bytes counted.
+     */
+    public static synchronized OkHttpClient getTransferHttpClient(Context context) {
+        if (transferClient == null) {
+            HttpLoggingInterceptor headerLogger = new HttpLoggingInterceptor();
+            headerLogger.setLevel(HttpLoggingInterceptor.Level.HEADERS);
+
+            OkHttpClient.Builder builder = getHttpClient(context).newBuilder();
+            builder.interceptors().clear();
+            transferClient = builder
+                .addInterceptor(new AuthInterceptor(context))    // Adds the auth token
+                .addInterceptor(headerLogger)
+                .addInterceptor(new DownloadProgressInterceptor()) // Reports progress for tagged calls
+                .build();
+        }
+        return transferClient;
+    }
 
-            // 5. Build the Retrofit instance using custom client.
+    /**
+     * Gets the singleton instance of the main Retrofit client.
+     *
+     * @param context The application context.
+     * @return The configured Retrofit instance.
+     */
+    public static synchronized Retrofit getClient(Context context) {
+        if (retrofit == null) {
+            // The base URL is fetched from the string resources that were
+            // auto-generated by Gradle. This keeps the URL out of the source code.
+            final String BASE_URL = context.getApplicationContext().getString(R.string.api_base_url);
+
+            // Build the Retrofit instance using the shared client.
             retrofit = new Retrofit.Builder()
                 .baseUrl(BASE_URL)
-                .client(client)
+                .client(getHttpClient(context))
                 .addConverterFactory(GsonConverterFactory.create())
                 .build();
         }
@@ -52,31 +96,17 @@ public class RetrofitClient {
     }
 
     /**
-     * Gets a specialized ApiService for downloading files with progress listening.
-     *
-     * @param listener The listener to report download progress.
-     * @return A specialized ApiService instance.
+     * Gets the ApiService for uploading and downloading file contents.
+     * It shares the Retrofit configuration and connections of {@link #getClient},
+     * but runs on the transfer client so bodies are streamed, never logged.
      */
-    public static ApiService getDownloadApiService(Context context, DownloadProgressListener listener) {
-        // The base URL must also be fetched here for this specialized client.
-        final String BASE_URL = context.getApplicationContext().getString(R.string.api_base_url);
-
-        // --- ADD THE AUTHENTICATION COMPONENTS ---
-        AuthInterceptor authInterceptor = new AuthInterceptor(context);
-        TokenAuthenticator tokenAuthenticator = new TokenAuthenticator(context);
-
-        // Build an OkHttpClient that has ALL THREE components.
-        OkHttpClient downloadClient = new OkHttpClient.Builder()
-            .addInterceptor(authInterceptor)         // Adds the auth token
-            .addInterceptor(new DownloadProgressInterceptor(listener)) // Reports progress
-            .authenticator(tokenAuthenticator)      // Refreshes the token if needed
-            .build();
-
-        Retrofit downloadRetrofit = new Retrofit.Builder()
-            .baseUrl(BASE_URL)
-            .client(downloadClient)
-            .build();
-
-        return downloadRetrofit.create(ApiService.class);
+    public static synchronized ApiService getTransferApiService(Context context) {
+        if (transferApiService == null) {
+            transferApiService = getClient(context).newBuilder()
+                .client(getTransferHttpClient(context))
+                .build()
+                .create(ApiService.class);
+        }
+        return transferApiService;
     }
 }
@@ -0,0 +1,418 @@
+package com.andreas.personalcloudclient;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.ResponseBody;
+import retrofit2.Response;
+
+/**
+ * Fetches a large file as byte-range pieces over several concurrent connections, writing
+ * each piece at its offset through a positional FileChannel. The number of connections
+ * starts small and grows while the measured throughput keeps improving.
+ * Completed pieces are recorded, so an interrupted download only refetches missing pieces.
+ * Every call here is blocking and must run on a background thread.
+ */
+public class SegmentedDownloader {
+
+    private static final String TAG = "SegmentedDownloader";
+
+    // Files smaller than this are not worth the extra connections.
+    public static final long SEGMENTED_THRESHOLD = 32L * 1024 * 1024;
+    private static final long PIECE_SIZE = 4L * 1024 * 1024;
+    private static final int INITIAL_SEGMENTS = 2;
+    private static final int MAX_SEGMENTS = 6;
+    // A new connection is only added if the last one raised throughput by at least this factor.
+    private static final double MIN_GAIN_TO_GROW = 1.15;
+    // Throughput is judged over at least this long, so one piece finishing early decides nothing.
+    private static final long MIN_WINDOW_MS = 1000;
+    private static final int MAX_ATTEMPTS_PER_PIECE = 3;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String META_SUFFIX = ".segments";
+    private static final String KEY_VALIDATOR = "validator";
+    private static final String KEY_TOTAL_LENGTH = "total_length";
+    private static final String KEY_PIECES = "completed_pieces";
+
+    private static final ExecutorService segmentExecutor = Executors.newCachedThreadPool();
+
+    private final ApiService apiService;
+
+    public SegmentedDownloader(ApiService apiService) {
+        this.apiService = apiService;
+    }
+
+    // True if a segmented download for this partial file was started before and can be continued.
+    public static boolean hasSegments(File partialFile) {
+        return metaFileFor(partialFile).exists();
+    }
+
+    public static void discard(File partialFile) {
+        File meta = metaFileFor(partialFile);
+        if (meta.exists() && !meta.delete()) {
+            Log.w(TAG, "Could not delete " + meta);
+        }
+    }
+
+    /**
+     * Downloads the file in segments if the server supports ranges and the file is large enough.
+     *
+     * @return false if segmented mode does not apply; the caller should use a single stream.
+     */
+    public boolean tryDownload(String filename, File partialFile, DownloadProgressListener listener) throws IOException {
+        Properties meta = loadMeta(partialFile);
+        String validator = meta.getProperty(KEY_VALIDATOR);
+        long total = Long.parseLong(meta.getProperty(KEY_TOTAL_LENGTH, "-1"));
+
+        // Probe with a one-byte range: a 206 with a total length means ranges are served.
+        Response<ResponseBody> probe = apiService.downloadFile(filename, "bytes=0-0", null).execute();
+        try {
+            String acceptRanges = probe.headers().get("Accept-Ranges");
+            String contentRange = probe.headers().get("Content-Range");
+            long probedTotal = totalOfContentRange(contentRange);
+            if (probe.code() != 206 || probedTotal < 0 || "none".equalsIgnoreCase(acceptRanges)) {
+                discardRestart(partialFile);
+                return false;
+            }
+            String probedValidator = probe.headers().get("ETag");
+            if (probedValidator == null || probedValidator.startsWith("W/")) {
+                probedValidator = probe.headers().get("Last-Modified");
+            }
+            if (probedValidator == null || probedTotal < SEGMENTED_THRESHOLD) {
+                discardRestart(partialFile);
+                return false;
+            }
+            if (!probedValidator.equals(validator) || probedTotal != total) {
+                // New download, or the remote file changed since the pieces were fetched.
+                meta = new Properties();
+                meta.setProperty(KEY_VALIDATOR, probedValidator);
+                meta.setProperty(KEY_TOTAL_LENGTH, String.valueOf(probedTotal));
+                validator = probedValidator;
+                total = probedTotal;
+                if (partialFile.exists() && !partialFile.delete()) {
+                    throw new IOException("Cannot reset " + partialFile);
+                }
+            }
+        } finally {
+            if (probe.body() != null) {
+                probe.body().close();
+            }
+        }
+
+        int pieceCount = (int) ((total + PIECE_SIZE - 1) / PIECE_SIZE);
+        BitSet completed = parsePieces(meta.getProperty(KEY_PIECES, ""));
+        ConcurrentLinkedQueue<Integer> pending = new ConcurrentLinkedQueue<>();
+        long alreadyDone = 0;
+        for (int piece = 0; piece < pieceCount; piece++) {
+            if (completed.get(piece)) {
+                alreadyDone += pieceLength(piece, total);
+            } else {
+                pending.add(piece);
+            }
+        }
+        saveMeta(partialFile, meta);
+        Log.d(TAG, filename + ": " + pending.size() + " of " + pieceCount + " pieces to fetch");
+
+        try (RandomAccessFile file = new RandomAccessFile(partialFile, "rw")) {
+            file.setLength(total);
+            Transfer transfer = new Transfer(filename, validator, total, file.getChannel(), pending,
+                completed, meta, partialFile, alreadyDone, listener);
+            transfer.run();
+            file.getFD().sync();
+        }
+        return true;
+    }
+
+    // One running segmented download and its adaptive worker pool.
+    private class Transfer {
+        private final String filename;
+        private final String validator;
+        private final long total;
+        private final FileChannel channel;
+        private final ConcurrentLinkedQueue<Integer> pending;
+        private final BitSet completed;
+        private final Properties meta;
+        private final File partialFile;
+        private final DownloadProgressListener listener;
+
+        private final AtomicLong bytesDone;
+        private final AtomicBoolean failed = new AtomicBoolean(false);
+        private final List<Future<?>> workers = new ArrayList<>();
+        private volatile IOException error;
+
+        // The current measuring window: when it started and how many bytes were done then.
+        private long windowStartedAt = SystemClock.elapsedRealtime();
+        private long windowStartBytes;
+        // The throughput of the window that led to adding the newest connection; 0 before the first one.
+        private double throughputBeforeGrowth = 0;
+
+        Transfer(String filename, String validator, long total, FileChannel channel,
+                 ConcurrentLinkedQueue<Integer> pending, BitSet completed, Properties meta,
+                 File partialFile, long alreadyDone, DownloadProgressListener listener) {
+            this.filename = filename;
+            this.validator = validator;
+            this.total = total;
+            this.channel = channel;
+            this.pending = pending;
+            this.completed = completed;
+            this.meta = meta;
+            this.partialFile = partialFile;
+            this.listener = listener;
+            this.bytesDone = new AtomicLong(alreadyDone);
+            this.windowStartBytes = alreadyDone;
+        }
+
+        void run() throws IOException {
+            synchronized (this) {
+                for (int i = 0; i < Math.min(INITIAL_SEGMENTS, pending.size()); i++) {
+                    startWorker();
+                }
+            }
+            // Workers may be added while we wait, so wait until the list stops growing.
+            int joined = 0;
+            while (true) {
+                Future<?> next;
+                synchronized (this) {
+                    if (joined >= workers.size()) break;
+                    next = workers.get(joined);
+                }
+                try {
+                    next.get();
+                } catch (InterruptedException e) {
+                    // Paused: stop every segment now instead of letting each finish its piece.
+                    failed.set(true);
+                    cancelWorkers();
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Segmented download of " + filename + " interrupted");
+                } catch (Exception e) {
+                    failed.set(true);
+                    if (error == null) error = new IOException("Segment worker failed", e);
+                }
+                joined++;
+            }
+            if (error != null) {
+                throw error;
+            }
+            if (!pending.isEmpty()) {
+                throw new IOException("Segmented download of " + filename + " did not complete.");
+            }
+        }
+
+        private synchronized void cancelWorkers() {
+            for (Future<?> worker : workers) {
+                worker.cancel(true);
+            }
+        }
+
+        private void startWorker() {
+            workers.add(segmentExecutor.submit(this::workLoop));
+        }
+
+        private void workLoop() {
+            Integer piece;
+            while (!failed.get() && (piece = pending.poll()) != null) {
+                try {
+                    fetchPiece(piece);
+                    onPieceCompleted(piece);
+                } catch (IOException e) {
+                    Log.e(TAG, "Piece " + piece + " of " + filename + " failed", e);
+                    pending.add(piece);
+                    error = e;
+                    failed.set(true);
+                }
+            }
+        }
+
+        private void fetchPiece(int piece) throws IOException {
+            long start = piece * PIECE_SIZE;
+            long end = start + pieceLength(piece, total) - 1;
+            IOException lastError = null;
+            for (int attempt = 1; attempt <= MAX_ATTEMPTS_PER_PIECE; attempt++) {
+                long written = 0;
+                Response<ResponseBody> response = null;
+                try {
+                    response = apiService.downloadFile(filename, "bytes=" + start + "-" + end, validator).execute();
+                    ResponseBody body = response.body();
+                    if (response.code() != 206 || body == null) {
+                        // A 200 here means If-Range failed: the file changed under us.
+                        throw new IOException("Range request for piece " + piece + " failed. Code: " + response.code());
+                    }
+                    ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                    byte[] array = buffer.array();
+                    try (InputStream in = body.byteStream()) {
+                        int read;
+                        while (start + written <= end && (read = in.read(array, 0, (int) Math.min(BUFFER_SIZE, end - start - written + 1))) != -1) {
+                            if (Thread.currentThread().isInterrupted()) {
+                                throw new InterruptedIOException("Piece " + piece + " cancelled");
+                            }
+                            buffer.clear();
+                            buffer.limit(read);
+                            while (buffer.hasRemaining()) {
+                                channel.write(buffer, start + written + buffer.position());
+                            }
+                            written += read;
+                            addProgress(read);
+                        }
+                    }
+                    if (start + written == end + 1) {
+                        return;
+                    }
+                    lastError = new IOException("Piece " + piece + " ended early");
+                } catch (IOException e) {
+                    if (e instanceof InterruptedIOException) throw e;
+                    if (response != null && response.isSuccessful() && response.code() != 206) throw e;
+                    lastError = e;
+                } finally {
+                    if (response != null && response.body() != null) response.body().close();
+                }
+                // Bytes of an incomplete piece are fetched again, so take them back out of the progress.
+                addProgress(-written);
+            }
+            throw lastError;
+        }
+
+        private synchronized void onPieceCompleted(int piece) {
+            completed.set(piece);
+            meta.setProperty(KEY_PIECES, formatPieces(completed));
+            try {
+                channel.force(false);
+                saveMeta(partialFile, meta);
+            } catch (IOException e) {
+                Log.w(TAG, "Could not record piece " + piece, e);
+            }
+            maybeGrow();
+        }
+
+        /**
+         * Simple hill climbing: keep adding connections while each one pays for itself.
+         * Throughput is measured over a sliding window that restarts at every decision, so the rate
+         * with the newest connection is compared with the rate just before it was added. An average
+         * since the start would still carry the slow first pieces and barely move.
+         */
+        private void maybeGrow() {
+            int active = 0;
+            for (Future<?> worker : workers) {
+                if (!worker.isDone()) active++;
+            }
+            if (active >= MAX_SEGMENTS || pending.size() <= active) return;
+
+            long now = SystemClock.elapsedRealtime();
+            long elapsed = now - windowStartedAt;
+            if (elapsed < MIN_WINDOW_MS) return;
+            long done = bytesDone.get();
+            double throughput = (done - windowStartBytes) * 1000.0 / elapsed;
+            windowStartedAt = now;
+            windowStartBytes = done;
+            if (throughputBeforeGrowth == 0 || throughput >= throughputBeforeGrowth * MIN_GAIN_TO_GROW) {
+                throughputBeforeGrowth = throughput;
+                startWorker();
+                Log.d(TAG, filename + ": " + (active + 1) + " segments after " + (long) throughput + " B/s");
+            }
+        }
+
+        private void addProgress(long delta) {
+            long done = bytesDone.addAndGet(delta);
+            if (listener != null) {
+                listener.onBytesTransferred(done, total);
+            }
+        }
+    }
+
+    // Forget a stale segmented attempt when the server no longer qualifies for segmented mode.
+    private static void discardRestart(File partialFile) {
+        if (hasSegments(partialFile)) {
+            discard(partialFile);
+            if (partialFile.exists() && !partialFile.delete()) {
+                Log.w(TAG, "Could not delete " + partialFile);
+            }
+        }
+    }
+
+    private static long pieceLength(int piece, long total) {
+        return Math.min(PIECE_SIZE, total - piece * PIECE_SIZE);
+    }
+
+    // Parses "bytes 0-0/1000" into 1000, or -1 when the length is unknown.
+    private static long totalOfContentRange(String contentRange) {
+        if (contentRange == null) return -1;
+        int slash = contentRange.indexOf('/');
+        if (slash < 0) return -1;
+        try {
+            return Long.parseLong(contentRange.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static BitSet parsePieces(String value) {
+        BitSet pieces = new BitSet();
+        if (value.isEmpty()) return pieces;
+        for (String index : value.split(",")) {
+            try {
+                pieces.set(Integer.parseInt(index.trim()));
+            } catch (NumberFormatException ignored) {
+                // A damaged entry only costs us a re-fetch of that piece.
+            }
+        }
+        return pieces;
+    }
+
+    private static String formatPieces(BitSet pieces) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = pieces.nextSetBit(0); i >= 0; i = pieces.nextSetBit(i + 1)) {
+            if (builder.length() > 0) builder.append(',');
+            builder.append(i);
+        }
+        return builder.toString();
+    }
+
+    private static File metaFileFor(File partialFile) {
+        return new File(partialFile.getPath() + META_SUFFIX);
+    }
+
+    private static Properties loadMeta(File partialFile) {
+        Properties meta = new Properties();
+        File metaFile = metaFileFor(partialFile);
+        if (metaFile.exists()) {
+            try (InputStream in = new FileInputStream(metaFile)) {
+                meta.load(in);
+            } catch (IOException e) {
+                Log.w(TAG, "Ignoring unreadable " + metaFile, e);
+                meta.clear();
+            }
+        }
+        return meta;
+    }
+
+    private static void saveMeta(File partialFile, Properties meta) throws IOException {
+        File metaFile = metaFileFor(partialFile);
+        File tmp = new File(metaFile.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            meta.store(out, null);
+        }
+        if (!tmp.renameTo(metaFile)) {
+            throw new IOException("Cannot write " + metaFile);
+        }
+    }
+}
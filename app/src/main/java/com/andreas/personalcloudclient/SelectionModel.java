@@ -0,0 +1,79 @@
+package com.andreas.personalcloudclient;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The selected files, as "these files" or "every file except these".
+ * Select-all and invert never touch the listing, so they cost the same for ten files
+ * and for a hundred thousand; only the files toggled by hand are held in memory.
+ * Instances are immutable, so an old and a new selection can be compared row by row.
+ */
+public final class SelectionModel {
+
+    public static final SelectionModel NONE = new SelectionModel(false, Collections.emptySet(), null);
+
+    // true: everything except the exceptions is selected. false: only the exceptions are.
+    private final boolean allExcept;
+    private final Set<String> exceptions;
+    // What "everything" means: the files of this type, or all files for null.
+    private final String fileType;
+
+    private SelectionModel(boolean allExcept, Set<String> exceptions, String fileType) {
+        this.allExcept = allExcept;
+        this.exceptions = exceptions;
+        this.fileType = fileType;
+    }
+
+    // Every file of the type (all files for null).
+    public static SelectionModel all(String fileType) {
+        return new SelectionModel(true, Collections.emptySet(), fileType);
+    }
+
+    public boolean isSelected(String filename, String fileType) {
+        if (allExcept && this.fileType != null && !this.fileType.equals(fileType)) {
+            return false;
+        }
+        return allExcept != exceptions.contains(filename);
+    }
+
+    // Copies only the hand-picked exceptions, never the listing.
+    public SelectionModel toggle(String filename) {
+        Set<String> toggled = new HashSet<>(exceptions);
+        if (!toggled.remove(filename)) {
+            toggled.add(filename);
+        }
+        return new SelectionModel(allExcept, Collections.unmodifiableSet(toggled), fileType);
+    }
+
+    /**
+     * The exceptions are shared: they mean the same files, only with the opposite state.
+     * @param fileType The type of the files shown, which "everything" then refers to; null for all.
+     */
+    public SelectionModel invert(String fileType) {
+        return new SelectionModel(!allExcept, exceptions, fileType);
+    }
+
+    // Selected files out of a listing of totalFiles.
+    public int count(int totalFiles) {
+        return allExcept ? Math.max(totalFiles - exceptions.size(), 0) : exceptions.size();
+    }
+
+    public boolean isEmpty(int totalFiles) {
+        return count(totalFiles) == 0;
+    }
+
+    // When true, the selection has to be streamed from the listing; otherwise getExceptions() is the selection.
+    public boolean isAllExcept() {
+        return allExcept;
+    }
+
+    public Set<String> getExceptions() {
+        return exceptions;
+    }
+
+    public String getFileType() {
+        return fileType;
+    }
+}
@@ -2,8 +2,13 @@ package com.andreas.personalcloudclient;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import android.content.ClipData;
 import android.content.Intent;
+import android.net.Uri;
 import android.os.Bundle;
+import android.widget.Toast;
+
+import java.util.ArrayList;
 
 // This activity has no UI. Its only job is to decide where to go.
 public class SplashActivity extends AppCompatActivity {
@@ -12,12 +17,19 @@ public class SplashActivity extends AppCompatActivity {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
+        // Start connecting to the server now, so the first request does not pay for it.
+        ConnectionWarmer.warmUp(this);
+
         // Get the SessionManager instance.
         SessionManager sessionManager = SessionManager.getInstance();
 
+        // Files shared into the app from another one (ACTION_SEND / ACTION_SEND_MULTIPLE).
+        ArrayList<Uri> sharedUris = getSharedUris(getIntent());
+
         Intent intent;
+        boolean loggedIn = sessionManager.getAccessToken() != null;
         // Check if there is a saved access token.
-        if (sessionManager.getAccessToken() != null) {
+        if (loggedIn) {
             // If a token exists, the user is "logged in". Go to MainActivity.
             intent = new Intent(SplashActivity.this, MainActivity.class);
         } else {
@@ -27,9 +39,44 @@ public class SplashActivity extends AppCompatActivity {
 
         // Set flags to clear the back stack.
         intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+
+        if (!sharedUris.isEmpty()) {
+            if (loggedIn) {
+                forwardSharedUris(intent, sharedUris);
+            } else {
+                Toast.makeText(this, "Log in, then share the files again to upload them", Toast.LENGTH_LONG).show();
+            }
+        }
         startActivity(intent);
 
         // IMPORTANT: Finish the SplashActivity so the user can't press "back" to get to it.
         finish();
     }
+
+    private static ArrayList<Uri> getSharedUris(Intent intent) {
+        ArrayList<Uri> uris = new ArrayList<>();
+        if (Intent.ACTION_SEND.equals(intent.getAction())) {
+            Uri uri = intent.getParcelableExtra(Intent.EXTRA_STREAM);
+            if (uri != null) {
+                uris.add(uri);
+            }
+        } else if (Intent.ACTION_SEND_MULTIPLE.equals(intent.getAction())) {
+            ArrayList<Uri> shared = intent.getParcelableArrayListExtra(Intent.EXTRA_STREAM);
+            if (shared != null) {
+                uris.addAll(shared);
+            }
+        }
+        return uris;
+    }
+
+    // The read grants came with this intent; ClipData plus the grant flag passes them on to MainActivity.
+    private static void forwardSharedUris(Intent intent, ArrayList<Uri> uris) {
+        intent.putParcelableArrayListExtra(MainActivity.EXTRA_UPLOAD_URIS, uris);
+        ClipData clipData = ClipData.newRawUri(null, uris.get(0));
+        for (int i = 1; i < uris.size(); i++) {
+            clipData.addItem(new ClipData.Item(uris.get(i)));
+        }
+        intent.setClipData(clipData);
+        intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+    }
 }
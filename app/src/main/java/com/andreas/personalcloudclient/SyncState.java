@@ -0,0 +1,61 @@
+package com.andreas.personalcloudclient;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+// What the client knows about the freshness of a cached server resource, e.g. the file listing.
+@Entity(tableName = "sync_state")
+public class SyncState {
+
+    public static final String KEY_FILE_LISTING = "files";
+    // Each keyset page of the listing keeps its own validators, under this prefix and the
+    // filename the page starts after ("" for the first page).
+    public static final String KEY_FILE_LISTING_PAGE_PREFIX = "files/page:";
+
+    public static String listingPageKey(String after) {
+        return KEY_FILE_LISTING_PAGE_PREFIX + (after != null ? after : "");
+    }
+
+    @PrimaryKey
+    @NonNull
+    @ColumnInfo(name = "key")
+    private String key = "";
+
+    // Validators of the cached copy, sent back as If-None-Match / If-Modified-Since.
+    @ColumnInfo(name = "etag")
+    private String etag;
+
+    @ColumnInfo(name = "last_modified")
+    private String lastModified;
+
+    // Position in the server's change feed; null until the server hands one out.
+    // For a listing page, the last filename in it, where the next page starts; null for the last page.
+    @ColumnInfo(name = "cursor")
+    private String cursor;
+
+    // When the server last confirmed the cached copy (200 or 304), in epoch millis.
+    @ColumnInfo(name = "validated_at")
+    private long validatedAt;
+
+    // --- Room needs an empty constructor ---
+    public SyncState() {}
+
+    // --- Getters and Setters (Room needs setters) ---
+    @NonNull
+    public String getKey() { return key; }
+    public void setKey(@NonNull String key) { this.key = key; }
+
+    public String getEtag() { return etag; }
+    public void setEtag(String etag) { this.etag = etag; }
+
+    public String getLastModified() { return lastModified; }
+    public void setLastModified(String lastModified) { this.lastModified = lastModified; }
+
+    public String getCursor() { return cursor; }
+    public void setCursor(String cursor) { this.cursor = cursor; }
+
+    public long getValidatedAt() { return validatedAt; }
+    public void setValidatedAt(long validatedAt) { this.validatedAt = validatedAt; }
+}
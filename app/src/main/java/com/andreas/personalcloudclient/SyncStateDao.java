@@ -0,0 +1,30 @@
+package com.andreas.personalcloudclient;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+@Dao
+public interface SyncStateDao {
+
+    @Query("SELECT * FROM sync_state WHERE `key` = :key")
+    SyncState get(String key);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void save(SyncState state);
+
+    @Query("UPDATE sync_state SET validated_at = :validatedAt WHERE `key` = :key")
+    void markValidated(String key, long validatedAt);
+
+    @Query("UPDATE sync_state SET cursor = :cursor, validated_at = :validatedAt WHERE `key` = :key")
+    void advanceCursor(String key, String cursor, long validatedAt);
+
+    // Drops the listing pages a finished sync did not confirm, e.g. after page boundaries moved.
+    @Query("DELETE FROM sync_state WHERE substr(`key`, 1, length(:prefix)) = :prefix AND validated_at < :before")
+    void deleteUnconfirmed(String prefix, long before);
+
+    // Forces the next load to ask the server, e.g. after this client changed something.
+    @Query("UPDATE sync_state SET validated_at = 0 WHERE `key` = :key")
+    void invalidate(String key);
+}
@@ -0,0 +1,32 @@
+package com.andreas.personalcloudclient;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+import java.util.List;
+
+@Dao
+public interface TransferDao {
+
+    @Insert
+    long insert(TransferRecord record);
+
+    // Everything that still has to run, oldest first.
+    @Query("SELECT * FROM transfers WHERE status IN ('QUEUED', 'RUNNING', 'PAUSED') ORDER BY id ASC")
+    List<TransferRecord> getUnfinished();
+
+    @Query("SELECT * FROM transfers WHERE id = :id")
+    TransferRecord getById(long id);
+
+    @Query("UPDATE transfers SET status = :status, updated_at = :updatedAt WHERE id = :id")
+    void updateStatus(long id, TransferTask.State status, long updatedAt);
+
+    @Query("UPDATE transfers SET confirmed_offset = :confirmedOffset, total_bytes = :totalBytes, upload_id = :uploadId, updated_at = :updatedAt WHERE id = :id")
+    void updateProgress(long id, long confirmedOffset, long totalBytes, String uploadId, long updatedAt);
+
+    @Query("UPDATE transfers SET status = :status, attempts = attempts + 1, updated_at = :updatedAt WHERE id = :id")
+    void recordFailedAttempt(long id, TransferTask.State status, long updatedAt);
+
+    @Query("DELETE FROM transfers WHERE id = :id")
+    void delete(long id);
+}
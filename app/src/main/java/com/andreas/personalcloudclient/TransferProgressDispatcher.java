@@ -0,0 +1,234 @@
+package com.andreas.personalcloudclient;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.text.format.DateUtils;
+import android.text.format.Formatter;
+
+import androidx.core.app.ActivityCompat;
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns the byte counters of running transfers into UI updates.
+ * Transfers only record bytes on their own thread; this class samples them on the main
+ * thread at a fixed cadence, computes throughput and ETA, and rebuilds a notification
+ * only when a transfer's percentage actually changed. Concurrent transfers of the same
+ * direction are grouped under one summary notification.
+ * All methods must be called on the main thread.
+ */
+public class TransferProgressDispatcher {
+
+    private static final long SAMPLE_INTERVAL_MS = 1000;
+    // Weight of the newest sample in the smoothed throughput.
+    private static final double SPEED_SMOOTHING = 0.3;
+
+    private static final String UPLOAD_GROUP = "com.andreas.personalcloudclient.UPLOADS";
+    private static final String DOWNLOAD_GROUP = "com.andreas.personalcloudclient.DOWNLOADS";
+    // Transfers use their journal id (1, 2, ...) or an id counting down from Integer.MAX_VALUE,
+    // so the summaries take ids from the bottom of the range that neither can ever reach.
+    private static final int UPLOAD_SUMMARY_ID = Integer.MIN_VALUE;
+    private static final int DOWNLOAD_SUMMARY_ID = Integer.MIN_VALUE + 1;
+
+    // --- Singleton Instance ---
+    private static volatile TransferProgressDispatcher INSTANCE;
+
+    public static TransferProgressDispatcher getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (TransferProgressDispatcher.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new TransferProgressDispatcher(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    // The sampling state of one running transfer.
+    private static class Entry {
+        final TransferTask task;
+        final int notificationId;
+        final NotificationCompat.Builder builder;
+        int lastPercent = -1;
+        long lastBytes;
+        long lastSampleAt;
+        double bytesPerSecond;
+
+        Entry(TransferTask task, int notificationId, NotificationCompat.Builder builder) {
+            this.task = task;
+            this.notificationId = notificationId;
+            this.builder = builder;
+            this.lastSampleAt = SystemClock.elapsedRealtime();
+        }
+    }
+
+    private final Context context;
+    private final NotificationManagerCompat notificationManager;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Map<TransferTask, Entry> entries = new LinkedHashMap<>();
+    private final int[] lastSummaryPercent = {-1, -1};
+    private boolean ticking = false;
+
+    private final Runnable tick = new Runnable() {
+        @Override
+        public void run() {
+            sample();
+            if (entries.isEmpty()) {
+                ticking = false;
+            } else {
+                mainHandler.postDelayed(this, SAMPLE_INTERVAL_MS);
+            }
+        }
+    };
+
+    private TransferProgressDispatcher(Context context) {
+        this.context = context;
+        this.notificationManager = NotificationManagerCompat.from(context);
+    }
+
+    // Starts sampling a transfer and shows its notification.
+    public void track(TransferTask task, int notificationId) {
+        boolean isUpload = task.getDirection() == TransferTask.Direction.UPLOAD;
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, isUpload ? "upload_channel" : "download_channel")
+            .setContentTitle(task.getName())
+            .setContentText(isUpload ? "Upload starting..." : "Download starting...")
+            .setSmallIcon(isUpload ? android.R.drawable.stat_sys_upload : android.R.drawable.stat_sys_download)
+            .setPriority(NotificationCompat.PRIORITY_LOW)
+            .setGroup(isUpload ? UPLOAD_GROUP : DOWNLOAD_GROUP)
+            .setOnlyAlertOnce(true)
+            .setOngoing(true);
+        Entry entry = new Entry(task, notificationId, builder);
+        entry.lastBytes = task.getBytesDone();
+        entries.put(task, entry);
+        notifyIfPermitted(notificationId, builder);
+        updateSummary(task.getDirection(), true);
+
+        if (!ticking) {
+            ticking = true;
+            mainHandler.postDelayed(tick, SAMPLE_INTERVAL_MS);
+        }
+    }
+
+    // Stops sampling and shows the final state of the transfer.
+    public void finish(TransferTask task, boolean success, String text) {
+        Entry entry = entries.remove(task);
+        if (entry == null) return;
+        boolean isUpload = task.getDirection() == TransferTask.Direction.UPLOAD;
+        entry.builder.setOngoing(false).setProgress(0, 0, false).setContentText(text);
+        if (success) {
+            entry.builder.setSmallIcon(isUpload ? android.R.drawable.stat_sys_upload_done : android.R.drawable.stat_sys_download_done);
+        }
+        notifyIfPermitted(entry.notificationId, entry.builder);
+        updateSummary(task.getDirection(), true);
+    }
+
+    private void sample() {
+        long now = SystemClock.elapsedRealtime();
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            // Paused transfers never report back; they are tracked again when they restart.
+            if (entry.task.getState() == TransferTask.State.PAUSED) {
+                iterator.remove();
+                entry.builder.setOngoing(false).setContentText("Paused");
+                notifyIfPermitted(entry.notificationId, entry.builder);
+                continue;
+            }
+
+            long bytes = entry.task.getBytesDone();
+            long total = entry.task.getTotalBytes();
+            long elapsed = now - entry.lastSampleAt;
+            if (elapsed > 0) {
+                double instant = (bytes - entry.lastBytes) * 1000.0 / elapsed;
+                entry.bytesPerSecond = entry.bytesPerSecond == 0
+                    ? instant : SPEED_SMOOTHING * instant + (1 - SPEED_SMOOTHING) * entry.bytesPerSecond;
+            }
+            entry.lastBytes = bytes;
+            entry.lastSampleAt = now;
+
+            if (total <= 0) continue;
+            int percent = (int) ((bytes * 100) / total);
+            if (percent == entry.lastPercent) continue;
+            entry.lastPercent = percent;
+
+            entry.builder.setProgress(100, percent, false)
+                .setContentText(percent + "% - " + describeSpeed(entry.bytesPerSecond, total - bytes));
+            notifyIfPermitted(entry.notificationId, entry.builder);
+        }
+        updateSummary(TransferTask.Direction.UPLOAD, false);
+        updateSummary(TransferTask.Direction.DOWNLOAD, false);
+        TransferScheduler.getInstance().refreshProgress();
+    }
+
+    // "1.2 MB/s, 03:10 left"
+    private String describeSpeed(double bytesPerSecond, long remaining) {
+        if (bytesPerSecond < 1) {
+            return "waiting...";
+        }
+        String speed = Formatter.formatShortFileSize(context, (long) bytesPerSecond) + "/s";
+        long secondsLeft = (long) (remaining / bytesPerSecond);
+        return speed + ", " + DateUtils.formatElapsedTime(secondsLeft) + " left";
+    }
+
+    /**
+     * Keeps one summary notification per direction while two or more transfers share it,
+     * so the shade shows a single grouped entry instead of one row per file.
+     */
+    private void updateSummary(TransferTask.Direction direction, boolean force) {
+        boolean isUpload = direction == TransferTask.Direction.UPLOAD;
+        int summaryId = isUpload ? UPLOAD_SUMMARY_ID : DOWNLOAD_SUMMARY_ID;
+
+        List<Entry> active = new ArrayList<>();
+        long bytes = 0;
+        long total = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.task.getDirection() != direction) continue;
+            active.add(entry);
+            bytes += entry.task.getBytesDone();
+            total += entry.task.getTotalBytes();
+        }
+        if (active.size() < 2) {
+            notificationManager.cancel(summaryId);
+            lastSummaryPercent[direction.ordinal()] = -1;
+            return;
+        }
+
+        int percent = total > 0 ? (int) ((bytes * 100) / total) : 0;
+        if (!force && percent == lastSummaryPercent[direction.ordinal()]) return;
+        lastSummaryPercent[direction.ordinal()] = percent;
+
+        NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle();
+        for (Entry entry : active) {
+            style.addLine(entry.task.getName() + " - " + Math.max(entry.lastPercent, 0) + "%");
+        }
+        String title = active.size() + (isUpload ? " uploads" : " downloads");
+        NotificationCompat.Builder summary = new NotificationCompat.Builder(context, isUpload ? "upload_channel" : "download_channel")
+            .setContentTitle(title)
+            .setContentText(percent + "%")
+            .setSmallIcon(isUpload ? android.R.drawable.stat_sys_upload : android.R.drawable.stat_sys_download)
+            .setPriority(NotificationCompat.PRIORITY_LOW)
+            .setStyle(style.setSummaryText(percent + "%"))
+            .setProgress(100, percent, false)
+            .setGroup(isUpload ? UPLOAD_GROUP : DOWNLOAD_GROUP)
+            .setGroupSummary(true)
+            .setOnlyAlertOnce(true)
+            .setOngoing(true);
+        notifyIfPermitted(summaryId, summary);
+    }
+
+    private void notifyIfPermitted(int notificationId, NotificationCompat.Builder builder) {
+        if (ActivityCompat.checkSelfPermission(context, Manifest.permission.POST_NOTIFICATIONS) == PackageManager.PERMISSION_GRANTED) {
+            notificationManager.notify(notificationId, builder.build());
+        }
+    }
+}
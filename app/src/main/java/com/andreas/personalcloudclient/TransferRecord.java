@@ -0,0 +1,101 @@
+package com.andreas.personalcloudclient;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+// A journal row for one upload or download, so queued work survives process death and reboots.
+@Entity(tableName = "transfers")
+public class TransferRecord {
+
+    @PrimaryKey(autoGenerate = true)
+    private long id;
+
+    @NonNull
+    @ColumnInfo(name = "direction")
+    private TransferTask.Direction direction = TransferTask.Direction.UPLOAD;
+
+    // Uploads: the content Uri. Downloads: the remote filename.
+    @NonNull
+    @ColumnInfo(name = "source")
+    private String source = "";
+
+    // Uploads: the remote filename. Downloads: the local partial file.
+    @ColumnInfo(name = "destination")
+    private String destination;
+
+    @NonNull
+    @ColumnInfo(name = "filename")
+    private String filename = "";
+
+    // Bytes the other side has confirmed; a resumed transfer starts here.
+    @ColumnInfo(name = "confirmed_offset")
+    private long confirmedOffset;
+
+    @ColumnInfo(name = "total_bytes")
+    private long totalBytes;
+
+    @NonNull
+    @ColumnInfo(name = "status")
+    private TransferTask.State status = TransferTask.State.QUEUED;
+
+    @NonNull
+    @ColumnInfo(name = "priority")
+    private TransferTask.Priority priority = TransferTask.Priority.EXPLICIT;
+
+    // The server's chunked upload session, if one was opened.
+    @ColumnInfo(name = "upload_id")
+    private String uploadId;
+
+    @ColumnInfo(name = "attempts")
+    private int attempts;
+
+    @ColumnInfo(name = "updated_at")
+    private long updatedAt;
+
+    // --- Room needs an empty constructor ---
+    public TransferRecord() {}
+
+    // --- Getters and Setters (Room needs setters) ---
+    public long getId() { return id; }
+    public void setId(long id) { this.id = id; }
+
+    @NonNull
+    public TransferTask.Direction getDirection() { return direction; }
+    public void setDirection(@NonNull TransferTask.Direction direction) { this.direction = direction; }
+
+    @NonNull
+    public String getSource() { return source; }
+    public void setSource(@NonNull String source) { this.source = source; }
+
+    public String getDestination() { return destination; }
+    public void setDestination(String destination) { this.destination = destination; }
+
+    @NonNull
+    public String getFilename() { return filename; }
+    public void setFilename(@NonNull String filename) { this.filename = filename; }
+
+    public long getConfirmedOffset() { return confirmedOffset; }
+    public void setConfirmedOffset(long confirmedOffset) { this.confirmedOffset = confirmedOffset; }
+
+    public long getTotalBytes() { return totalBytes; }
+    public void setTotalBytes(long totalBytes) { this.totalBytes = totalBytes; }
+
+    @NonNull
+    public TransferTask.State getStatus() { return status; }
+    public void setStatus(@NonNull TransferTask.State status) { this.status = status; }
+
+    @NonNull
+    public TransferTask.Priority getPriority() { return priority; }
+    public void setPriority(@NonNull TransferTask.Priority priority) { this.priority = priority; }
+
+    public String getUploadId() { return uploadId; }
+    public void setUploadId(String uploadId) { this.uploadId = uploadId; }
+
+    public int getAttempts() { return attempts; }
+    public void setAttempts(int attempts) { this.attempts = attempts; }
+
+    public long getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(long updatedAt) { this.updatedAt = updatedAt; }
+}
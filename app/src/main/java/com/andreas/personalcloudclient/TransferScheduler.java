@@ -0,0 +1,252 @@
+package com.andreas.personalcloudclient;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Owns every upload and download of the app.
+ * Transfers wait in a priority queue and only a bounded number run per direction,
+ * so selecting hundreds of files never opens hundreds of connections at once.
+ * Transfers can be paused and resumed; because uploads and downloads are resumable,
+ * a paused transfer continues from its last confirmed byte.
+ */
+public class TransferScheduler {
+
+    private static final String TAG = "TransferScheduler";
+
+    // Uploads of many files are bound by per-request latency rather than bandwidth, so more of them
+    // in flight keep the uplink busy; beyond this they only compete for the same link.
+    private static final int MAX_CONCURRENT_UPLOADS = 4;
+    private static final int MAX_CONCURRENT_DOWNLOADS = 3;
+
+    // A snapshot of all transfers, for a single progress display.
+    public static class AggregateProgress {
+        public final int running;
+        public final int queued;
+        public final int paused;
+        public final long bytesDone;
+        public final long totalBytes;
+
+        AggregateProgress(int running, int queued, int paused, long bytesDone, long totalBytes) {
+            this.running = running;
+            this.queued = queued;
+            this.paused = paused;
+            this.bytesDone = bytesDone;
+            this.totalBytes = totalBytes;
+        }
+
+        public int getPercent() {
+            return totalBytes > 0 ? (int) ((bytesDone * 100) / totalBytes) : 0;
+        }
+    }
+
+    // --- Singleton Instance ---
+    private static volatile TransferScheduler INSTANCE;
+
+    public static TransferScheduler getInstance() {
+        if (INSTANCE == null) {
+            synchronized (TransferScheduler.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new TransferScheduler();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private final ExecutorService workers = Executors.newCachedThreadPool();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final PriorityQueue<TransferTask> queue = new PriorityQueue<>(11,
+        Comparator.comparing(TransferTask::getPriority).thenComparingLong(TransferTask::getSequence));
+    private final List<TransferTask> running = new ArrayList<>();
+    private final List<TransferTask> paused = new ArrayList<>();
+    private final Map<TransferTask.Direction, Integer> limits = new EnumMap<>(TransferTask.Direction.class);
+    private boolean allPaused = false;
+
+    private final MutableLiveData<AggregateProgress> _progress = new MutableLiveData<>();
+    public final LiveData<AggregateProgress> progress = _progress;
+
+    private TransferScheduler() {
+        limits.put(TransferTask.Direction.UPLOAD, MAX_CONCURRENT_UPLOADS);
+        limits.put(TransferTask.Direction.DOWNLOAD, MAX_CONCURRENT_DOWNLOADS);
+    }
+
+    // --- Public Methods ---
+
+    public synchronized TransferTask submit(TransferTask task) {
+        task.setState(TransferTask.State.QUEUED);
+        queue.add(task);
+        dispatch();
+        return task;
+    }
+
+    // Stops starting new transfers and interrupts the running ones; they resume from their offsets.
+    public synchronized void pauseAll() {
+        allPaused = true;
+        for (TransferTask task : new ArrayList<>(running)) {
+            pauseRunning(task);
+        }
+        publishProgress();
+    }
+
+    public synchronized void resumeAll() {
+        allPaused = false;
+        for (TransferTask task : paused) {
+            task.setState(TransferTask.State.QUEUED);
+            queue.add(task);
+        }
+        paused.clear();
+        dispatch();
+    }
+
+    public synchronized void pause(TransferTask task) {
+        if (queue.remove(task)) {
+            task.setState(TransferTask.State.PAUSED);
+            paused.add(task);
+        } else if (running.contains(task)) {
+            pauseRunning(task);
+        }
+        publishProgress();
+    }
+
+    public synchronized void resume(TransferTask task) {
+        if (paused.remove(task)) {
+            task.setState(TransferTask.State.QUEUED);
+            queue.add(task);
+            dispatch();
+        }
+    }
+
+    // Returns the live task for a journal entry, so restored work is never submitted twice.
+    public synchronized TransferTask findByJournalId(long journalId) {
+        for (TransferTask task : running) {
+            if (task.getJournalId() == journalId) return task;
+        }
+        for (TransferTask task : paused) {
+            if (task.getJournalId() == journalId) return task;
+        }
+        for (TransferTask task : queue) {
+            if (task.getJournalId() == journalId) return task;
+        }
+        return null;
+    }
+
+    public synchronized boolean isPaused() {
+        return allPaused;
+    }
+
+    // Re-reads the byte counters of all tasks; called by TransferProgressDispatcher on each sample.
+    void refreshProgress() {
+        publishProgress();
+    }
+
+    // --- Internals ---
+
+    private void pauseRunning(TransferTask task) {
+        task.setState(TransferTask.State.PAUSED);
+        if (task.future != null) {
+            // Okio checks the interrupt flag on every read and write, so the transfer stops promptly.
+            task.future.cancel(true);
+        }
+    }
+
+    // Starts queued transfers while their direction has free slots.
+    private synchronized void dispatch() {
+        if (!allPaused) {
+            List<TransferTask> skipped = new ArrayList<>();
+            TransferTask task;
+            while ((task = queue.poll()) != null) {
+                if (countRunning(task.getDirection()) >= limits.get(task.getDirection())) {
+                    skipped.add(task);
+                    continue;
+                }
+                start(task);
+            }
+            queue.addAll(skipped);
+        }
+        publishProgress();
+    }
+
+    private void start(TransferTask task) {
+        task.setState(TransferTask.State.RUNNING);
+        running.add(task);
+        mainHandler.post(() -> task.getListener().onStarted(task));
+        task.future = workers.submit(() -> {
+            IOException error = null;
+            try {
+                task.getWork().run(task);
+            } catch (IOException e) {
+                error = e;
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Transfer " + task.getName() + " crashed", e);
+                error = new IOException(e.getMessage(), e);
+            }
+            onTaskEnded(task, error);
+        });
+    }
+
+    private void onTaskEnded(TransferTask task, IOException error) {
+        boolean wasPaused;
+        synchronized (this) {
+            running.remove(task);
+            // A transfer that finished before the pause reached it still counts as done.
+            wasPaused = task.getState() == TransferTask.State.PAUSED && error != null;
+            if (wasPaused) {
+                paused.add(task);
+            } else {
+                task.setState(error == null ? TransferTask.State.SUCCEEDED : TransferTask.State.FAILED);
+            }
+            dispatch();
+        }
+        // Clear a pending interrupt so the pooled thread starts clean.
+        Thread.interrupted();
+        if (wasPaused) {
+            Log.d(TAG, "Paused " + task.getName());
+            return;
+        }
+        if (error instanceof InterruptedIOException) {
+            Log.w(TAG, "Transfer " + task.getName() + " was interrupted", error);
+        }
+        final IOException finalError = error;
+        mainHandler.post(() -> task.getListener().onFinished(task, finalError));
+    }
+
+    private int countRunning(TransferTask.Direction direction) {
+        int count = 0;
+        for (TransferTask task : running) {
+            if (task.getDirection() == direction) count++;
+        }
+        return count;
+    }
+
+    private synchronized void publishProgress() {
+        long bytesDone = 0;
+        long totalBytes = 0;
+        for (TransferTask task : running) {
+            bytesDone += task.getBytesDone();
+            totalBytes += task.getTotalBytes();
+        }
+        for (TransferTask task : paused) {
+            bytesDone += task.getBytesDone();
+            totalBytes += task.getTotalBytes();
+        }
+        // postValue coalesces, so bursts of state changes cost at most one main-thread update.
+        _progress.postValue(new AggregateProgress(running.size(), queue.size(), paused.size(), bytesDone, totalBytes));
+    }
+}
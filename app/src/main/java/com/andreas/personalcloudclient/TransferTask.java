@@ -0,0 +1,97 @@
+package com.andreas.personalcloudclient;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One upload or download owned by the {@link TransferScheduler}.
+ * The work itself runs on a scheduler thread; the listener is called on the main thread.
+ */
+public class TransferTask {
+
+    public enum Direction { UPLOAD, DOWNLOAD }
+
+    // Declared from most to least urgent; the scheduler starts lower ordinals first.
+    public enum Priority { USER_OPENED, EXPLICIT, BACKGROUND_SYNC }
+
+    public enum State { QUEUED, RUNNING, PAUSED, SUCCEEDED, FAILED }
+
+    // The blocking transfer. Throwing means the transfer failed.
+    public interface Work {
+        void run(TransferTask task) throws IOException;
+    }
+
+    public interface Listener {
+        void onStarted(TransferTask task);
+        void onFinished(TransferTask task, IOException error);
+    }
+
+    private static final AtomicLong nextSequence = new AtomicLong();
+
+    private final String name;
+    private final Direction direction;
+    private final Priority priority;
+    private final Work work;
+    private final Listener listener;
+    // Keeps first-come-first-served order within a priority.
+    private final long sequence = nextSequence.getAndIncrement();
+
+    // The TransferRecord behind this task, or 0 if it is not journaled.
+    private final long journalId;
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    private volatile State state = State.QUEUED;
+    private volatile long bytesDone;
+    private volatile long totalBytes;
+    Future<?> future;
+
+    public TransferTask(String name, Direction direction, Priority priority, Work work, Listener listener) {
+        this(name, direction, priority, 0, work, listener);
+    }
+
+    public TransferTask(String name, Direction direction, Priority priority, long journalId, Work work, Listener listener) {
+        this.name = name;
+        this.journalId = journalId;
+        this.direction = direction;
+        this.priority = priority;
+        this.work = work;
+        this.listener = listener;
+    }
+
+    // Called by the work as bytes move. Only records the counters;
+    // TransferProgressDispatcher samples them at a fixed rate for the UI.
+    public void setProgress(long bytesDone, long totalBytes) {
+        this.bytesDone = bytesDone;
+        this.totalBytes = totalBytes;
+    }
+
+    /**
+     * Blocks until the task succeeded or failed.
+     * @return false if the timeout elapsed first (a paused task never finishes on its own).
+     */
+    public boolean awaitFinished(long timeout, TimeUnit unit) throws InterruptedException {
+        return finished.await(timeout, unit);
+    }
+
+    // --- Getters ---
+    public String getName() { return name; }
+    public Direction getDirection() { return direction; }
+    public Priority getPriority() { return priority; }
+    public long getJournalId() { return journalId; }
+    public State getState() { return state; }
+    public long getBytesDone() { return bytesDone; }
+    public long getTotalBytes() { return totalBytes; }
+
+    long getSequence() { return sequence; }
+    Work getWork() { return work; }
+    Listener getListener() { return listener; }
+    void setState(State state) {
+        this.state = state;
+        if (state == State.SUCCEEDED || state == State.FAILED) {
+            finished.countDown();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.andreas.personalcloudclient;
+
+import android.app.Application;
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drains the transfer journal whenever the network is available.
+ * While the app is alive it simply waits for the scheduler to finish the journaled work;
+ * after process death or a reboot it re-submits every unfinished entry, and each one
+ * resumes from its confirmed offset instead of starting over.
+ */
+public class TransferWorker extends Worker {
+
+    private static final String TAG = "TransferWorker";
+    private static final String UNIQUE_WORK_NAME = "transfer_journal";
+    private static final long POLL_SECONDS = 30;
+
+    public TransferWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    // Safe to call often: an already scheduled or running drain is kept.
+    public static void enqueue(Context context) {
+        Constraints constraints = new Constraints.Builder()
+            .setRequiredNetworkType(NetworkType.CONNECTED)
+            .build();
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(TransferWorker.class)
+            .setConstraints(constraints)
+            .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, 30, TimeUnit.SECONDS)
+            .build();
+        WorkManager.getInstance(context).enqueueUniqueWork(UNIQUE_WORK_NAME, ExistingWorkPolicy.KEEP, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        FileRepository repository = FileRepository.getInstance((Application) getApplicationContext());
+
+        // Loop, because new transfers may be journaled while we wait for the current batch.
+        while (!isStopped()) {
+            List<TransferRecord> unfinished = repository.getUnfinishedTransfers();
+            if (unfinished.isEmpty()) {
+                return Result.success();
+            }
+            Log.d(TAG, "Draining " + unfinished.size() + " journaled transfer(s)");
+
+            List<TransferTask> tasks = new ArrayList<>();
+            for (TransferRecord record : unfinished) {
+                tasks.add(repository.resumeJournaledTransfer(record));
+            }
+
+            boolean anyFailed = false;
+            try {
+                for (TransferTask task : tasks) {
+                    while (!task.awaitFinished(POLL_SECONDS, TimeUnit.SECONDS)) {
+                        if (isStopped()) {
+                            return Result.retry();
+                        }
+                        // The user paused it; it continues when they resume, not on our schedule.
+                        if (task.getState() == TransferTask.State.PAUSED) {
+                            return Result.success();
+                        }
+                    }
+                    anyFailed |= task.getState() == TransferTask.State.FAILED;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Result.retry();
+            }
+            if (anyFailed) {
+                // Failed entries stay queued in the journal; back off before trying again.
+                return Result.retry();
+            }
+        }
+        return Result.retry();
+    }
+}
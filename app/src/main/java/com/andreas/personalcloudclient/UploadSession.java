@@ -0,0 +1,38 @@
+package com.andreas.personalcloudclient;
+
+import com.google.gson.annotations.SerializedName;
+
+// This class represents the server's view of a chunked upload session.
+// The offset is the number of bytes the server has durably stored so far.
+public class UploadSession {
+
+    @SerializedName("upload_id")
+    private String uploadId;
+
+    @SerializedName("offset")
+    private long offset;
+
+    @SerializedName("size")
+    private long size;
+
+    // The chunk size the server would like us to use (0 = client default).
+    @SerializedName("chunk_size")
+    private int chunkSize;
+
+    // --- Getters ---
+    public String getUploadId() {
+        return uploadId;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+}
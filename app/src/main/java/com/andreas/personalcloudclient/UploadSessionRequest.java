@@ -0,0 +1,17 @@
+package com.andreas.personalcloudclient;
+
+import com.google.gson.annotations.SerializedName;
+
+// This class represents the JSON body that opens a chunked upload session.
+public class UploadSessionRequest {
+
+    private String filename;
+
+    @SerializedName("size")
+    private long size;
+
+    public UploadSessionRequest(String filename, long size) {
+        this.filename = filename;
+        this.size = size;
+    }
+}
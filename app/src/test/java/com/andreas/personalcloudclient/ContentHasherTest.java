@@ -0,0 +1,94 @@
+package com.andreas.personalcloudclient;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for ContentHasher's pipelined SHA-256, against known digests and MessageDigest.
+ */
+public class ContentHasherTest {
+
+    @Test
+    public void sha256_knownDigests() throws IOException {
+        assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855", hash(new byte[0]));
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+            hash("abc".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    public void sha256_spansManyBuffers() throws Exception {
+        // More than the whole ring of 4 x 256 KiB buffers, and not a multiple of one buffer.
+        byte[] data = new byte[5 * 256 * 1024 + 123];
+        new Random(42).nextBytes(data);
+        StringBuilder expected = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(data)) {
+            expected.append(String.format("%02x", b));
+        }
+        assertEquals(expected.toString(), hash(data));
+    }
+
+    @Test
+    public void sha256_shortReadsDoNotChangeTheDigest() throws IOException {
+        byte[] data = new byte[300 * 1024];
+        new Random(7).nextBytes(data);
+        // Streams may return fewer bytes than asked for; readFully must keep going.
+        String trickled = ContentHasher.sha256("trickle", () -> new ByteArrayInputStream(data) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1000));
+            }
+        });
+        assertEquals(hash(data), trickled);
+    }
+
+    @Test
+    public void sha256_smallFileOnTheCallingThread() throws IOException {
+        byte[] data = "abc".getBytes(StandardCharsets.US_ASCII);
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+            ContentHasher.sha256("small", () -> new ByteArrayInputStream(data), data.length));
+        // A file that grew after its size was taken is still hashed to the end.
+        byte[] grown = new byte[100 * 1024];
+        new Random(3).nextBytes(grown);
+        assertEquals(hash(grown), ContentHasher.sha256("grown", () -> new ByteArrayInputStream(grown), 10));
+    }
+
+    @Test(timeout = 10_000)
+    public void sha256_runtimeExceptionBecomesIOException() {
+        try {
+            ContentHasher.sha256("revoked", () -> {
+                throw new SecurityException("Permission denial");
+            });
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            assertTrue(e.getCause() instanceof SecurityException);
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void sha256_readErrorIsRethrown() {
+        IOException failure = new IOException("Disk gone");
+        try {
+            ContentHasher.sha256("failing", () -> new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    throw failure;
+                }
+            });
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            assertSame(failure, e);
+        }
+    }
+
+    private static String hash(byte[] data) throws IOException {
+        return ContentHasher.sha256("test", () -> new ByteArrayInputStream(data));
+    }
+}
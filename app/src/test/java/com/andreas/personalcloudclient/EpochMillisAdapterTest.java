@@ -0,0 +1,51 @@
+package com.andreas.personalcloudclient;
+
+import com.google.gson.Gson;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the server timestamp formats EpochMillisAdapter accepts.
+ */
+public class EpochMillisAdapterTest {
+
+    // 2024-05-01T12:00:00Z
+    private static final long MILLIS = 1714564800000L;
+
+    @Test
+    public void parse_epochSecondsAndMillis() {
+        assertEquals(MILLIS, EpochMillisAdapter.parse("1714564800"));
+        assertEquals(MILLIS, EpochMillisAdapter.parse("1714564800000"));
+        assertEquals(MILLIS + 500, EpochMillisAdapter.parse("1714564800.5"));
+        assertEquals(MILLIS, EpochMillisAdapter.parse(" 1714564800 "));
+    }
+
+    @Test
+    public void parse_isoWithOffset() {
+        assertEquals(MILLIS, EpochMillisAdapter.parse("2024-05-01T12:00:00Z"));
+        assertEquals(MILLIS, EpochMillisAdapter.parse("2024-05-01T14:00:00+02:00"));
+        assertEquals(MILLIS + 250, EpochMillisAdapter.parse("2024-05-01T12:00:00.250Z"));
+    }
+
+    @Test
+    public void parse_localDateTimeIsUtc() {
+        assertEquals(MILLIS, EpochMillisAdapter.parse("2024-05-01T12:00:00"));
+        assertEquals(MILLIS, EpochMillisAdapter.parse("2024-05-01 12:00:00"));
+    }
+
+    @Test
+    public void parse_unreadableIsZero() {
+        assertEquals(0L, EpochMillisAdapter.parse("yesterday"));
+        assertEquals(0L, EpochMillisAdapter.parse(""));
+    }
+
+    @Test
+    public void read_numbersStringsAndNull() {
+        Gson gson = new Gson();
+        assertEquals(MILLIS, gson.fromJson("{\"filename\": \"a\", \"modified_at\": 1714564800}", FileMetadata.class).getModifiedAt());
+        assertEquals(MILLIS, gson.fromJson("{\"filename\": \"a\", \"modified_at\": \"2024-05-01T12:00:00Z\"}", FileMetadata.class).getModifiedAt());
+        assertEquals(0L, gson.fromJson("{\"filename\": \"a\", \"modified_at\": null}", FileMetadata.class).getModifiedAt());
+    }
+}
@@ -0,0 +1,45 @@
+package com.andreas.personalcloudclient;
+
+import com.google.gson.Gson;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for reading a page of the change feed the way Retrofit's Gson converter does.
+ */
+public class FileChangesTest {
+
+    private final Gson gson = new Gson();
+
+    @Test
+    public void parse_changedDeletedAndCursor() {
+        FileChanges changes = gson.fromJson("{\"cursor\": \"c42\", \"has_more\": true, "
+            + "\"changed\": [{\"filename\": \"a.jpg\", \"file_type\": \"image\", \"size\": 3, "
+            + "\"modified_at\": \"2024-05-01T12:00:00Z\"}], "
+            + "\"deleted\": [\"b.jpg\"]}", FileChanges.class);
+
+        assertEquals("c42", changes.getCursor());
+        assertTrue(changes.hasMore());
+        assertEquals(1, changes.getChanged().size());
+        FileMetadata file = changes.getChanged().get(0);
+        assertEquals("a.jpg", file.getFilename());
+        assertEquals("image", file.getFileType());
+        assertEquals(3, file.getSize());
+        assertEquals(1714564800000L, file.getModifiedAt());
+        assertEquals(Collections.singletonList("b.jpg"), changes.getDeleted());
+    }
+
+    @Test
+    public void parse_missingListsAreEmpty() {
+        FileChanges changes = gson.fromJson("{\"cursor\": \"c43\"}", FileChanges.class);
+
+        assertEquals("c43", changes.getCursor());
+        assertFalse(changes.hasMore());
+        assertTrue(changes.getChanged().isEmpty());
+        assertTrue(changes.getDeleted().isEmpty());
+    }
+}
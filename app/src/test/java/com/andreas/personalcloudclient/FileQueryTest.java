@@ -0,0 +1,133 @@
+package com.andreas.personalcloudclient;
+
+import androidx.sqlite.db.SupportSQLiteProgram;
+import androidx.sqlite.db.SupportSQLiteQuery;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the SQL FileQuery builds: the keyset comparisons must follow each
+ * sort's direction, and every value must be bound rather than written into the SQL.
+ */
+public class FileQueryTest {
+
+    private static final FileMetadata ROW = row("b.jpg", 2048, 1700000000000L);
+
+    @Test
+    public void pageAfter_firstPageHasNoKeyset() {
+        SupportSQLiteQuery query = FileQuery.DEFAULT.pageAfter(null, 100);
+        assertEquals("SELECT * FROM files ORDER BY filename ASC LIMIT ?", query.getSql());
+        assertEquals(Arrays.<Object>asList(100L), argsOf(query));
+    }
+
+    @Test
+    public void pageAfter_nameContinuesAfterTheFilename() {
+        SupportSQLiteQuery query = FileQuery.DEFAULT.pageAfter(ROW, 100);
+        assertEquals("SELECT * FROM files WHERE filename > ? ORDER BY filename ASC LIMIT ?", query.getSql());
+        assertEquals(Arrays.<Object>asList("b.jpg", 100L), argsOf(query));
+    }
+
+    @Test
+    public void pageAfter_descendingSortsCompareTheRowValueDownwards() {
+        SupportSQLiteQuery newest = FileQuery.DEFAULT.withSort(FileQuery.Sort.NEWEST).pageAfter(ROW, 50);
+        assertEquals("SELECT * FROM files WHERE (modified_at, filename) < (?, ?) "
+            + "ORDER BY modified_at DESC, filename DESC LIMIT ?", newest.getSql());
+        assertEquals(Arrays.<Object>asList(1700000000000L, "b.jpg", 50L), argsOf(newest));
+
+        SupportSQLiteQuery largest = FileQuery.DEFAULT.withSort(FileQuery.Sort.LARGEST).pageAfter(ROW, 50);
+        assertEquals("SELECT * FROM files WHERE (size, filename) < (?, ?) "
+            + "ORDER BY size DESC, filename DESC LIMIT ?", largest.getSql());
+        assertEquals(Arrays.<Object>asList(2048L, "b.jpg", 50L), argsOf(largest));
+    }
+
+    @Test
+    public void fileTypeFilterComesFirstAndIsBound() {
+        SupportSQLiteQuery query = FileQuery.DEFAULT.withSort(FileQuery.Sort.LARGEST).withFileType("image").pageAfter(ROW, 10);
+        assertEquals("SELECT * FROM files WHERE file_type = ? AND (size, filename) < (?, ?) "
+            + "ORDER BY size DESC, filename DESC LIMIT ?", query.getSql());
+        assertEquals(Arrays.<Object>asList("image", 2048L, "b.jpg", 10L), argsOf(query));
+    }
+
+    @Test
+    public void pageFrom_includesTheAnchorRow() {
+        SupportSQLiteQuery query = FileQuery.DEFAULT.withSort(FileQuery.Sort.NEWEST).pageFrom(ROW, 20);
+        assertEquals("SELECT * FROM files WHERE (modified_at, filename) <= (?, ?) "
+            + "ORDER BY modified_at DESC, filename DESC LIMIT ?", query.getSql());
+    }
+
+    @Test
+    public void pageBefore_readsBackwardsInTheReversedOrder() {
+        SupportSQLiteQuery name = FileQuery.DEFAULT.pageBefore(ROW, 30);
+        assertEquals("SELECT * FROM files WHERE filename < ? ORDER BY filename DESC LIMIT ?", name.getSql());
+
+        SupportSQLiteQuery newest = FileQuery.DEFAULT.withSort(FileQuery.Sort.NEWEST).pageBefore(ROW, 30);
+        assertEquals("SELECT * FROM files WHERE (modified_at, filename) > (?, ?) "
+            + "ORDER BY modified_at ASC, filename ASC LIMIT ?", newest.getSql());
+        assertEquals(Arrays.<Object>asList(1700000000000L, "b.jpg", 30L), argsOf(newest));
+    }
+
+    @Test
+    public void countBefore_countsTheRowsEarlierInTheView() {
+        assertEquals("SELECT COUNT(*) FROM files WHERE filename < ?", FileQuery.DEFAULT.countBefore(ROW).getSql());
+        SupportSQLiteQuery largest = FileQuery.DEFAULT.withSort(FileQuery.Sort.LARGEST).withFileType("image").countBefore(ROW);
+        assertEquals("SELECT COUNT(*) FROM files WHERE file_type = ? AND (size, filename) > (?, ?)", largest.getSql());
+        assertEquals(Arrays.<Object>asList("image", 2048L, "b.jpg"), argsOf(largest));
+    }
+
+    @Test
+    public void count_readsThePerTypeCounts() {
+        assertEquals("SELECT IFNULL(SUM(file_count), 0) FROM file_type_counts", FileQuery.DEFAULT.count().getSql());
+        SupportSQLiteQuery images = FileQuery.DEFAULT.withFileType("image").count();
+        assertEquals("SELECT IFNULL(SUM(file_count), 0) FROM file_type_counts WHERE file_type = ?", images.getSql());
+        assertEquals(Arrays.<Object>asList("image"), argsOf(images));
+    }
+
+    @Test
+    public void pageAt_bindsLimitAndOffset() {
+        SupportSQLiteQuery query = FileQuery.DEFAULT.pageAt(300, 100);
+        assertEquals("SELECT * FROM files ORDER BY filename ASC LIMIT ? OFFSET ?", query.getSql());
+        assertEquals(Arrays.<Object>asList(100L, 300L), argsOf(query));
+    }
+
+    @Test
+    public void filenamesWithQuotesStayInTheArguments() {
+        SupportSQLiteQuery query = FileQuery.DEFAULT.pageAfter(row("it's \"x\".jpg", 1, 1), 1);
+        assertFalse(query.getSql().contains("it's"));
+        assertEquals("it's \"x\".jpg", argsOf(query).get(0));
+    }
+
+    private static FileMetadata row(String filename, long size, long modifiedAt) {
+        FileMetadata row = new FileMetadata();
+        row.setFilename(filename);
+        row.setSize(size);
+        row.setModifiedAt(modifiedAt);
+        return row;
+    }
+
+    // The bound arguments in order; integers are bound as longs.
+    private static List<Object> argsOf(SupportSQLiteQuery query) {
+        List<Object> args = new ArrayList<>();
+        query.bindTo(new SupportSQLiteProgram() {
+            @Override public void bindNull(int index) { set(index, null); }
+            @Override public void bindLong(int index, long value) { set(index, value); }
+            @Override public void bindDouble(int index, double value) { set(index, value); }
+            @Override public void bindString(int index, String value) { set(index, value); }
+            @Override public void bindBlob(int index, byte[] value) { set(index, value); }
+            @Override public void clearBindings() { args.clear(); }
+            @Override public void close() {}
+
+            private void set(int index, Object value) {
+                while (args.size() < index) args.add(null);
+                args.set(index - 1, value);
+            }
+        });
+        assertEquals(query.getArgCount(), args.size());
+        return args;
+    }
+}
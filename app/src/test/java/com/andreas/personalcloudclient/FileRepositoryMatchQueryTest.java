@@ -0,0 +1,39 @@
+package com.andreas.personalcloudclient;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for turning typed search text into an FTS MATCH expression.
+ * Whatever the user types, only lowercase words with a prefix star may reach MATCH.
+ */
+public class FileRepositoryMatchQueryTest {
+
+    @Test
+    public void toMatchQuery_prefixesEveryWord() {
+        assertEquals("holiday* pho*", FileRepository.toMatchQuery("Holiday pho"));
+        assertEquals("img* 2024* 05*", FileRepository.toMatchQuery("IMG_2024.05"));
+    }
+
+    @Test
+    public void toMatchQuery_dropsQuotesAndOperators() {
+        // Lowercase "or" and "near" are plain terms to FTS4, not operators.
+        assertEquals("foo* or* bar* baz*", FileRepository.toMatchQuery("\"foo\" OR bar-baz"));
+        assertEquals("near* a* b*", FileRepository.toMatchQuery("NEAR(a b)"));
+        assertEquals("x* y* col* z*", FileRepository.toMatchQuery("x* ^y col:z"));
+    }
+
+    @Test
+    public void toMatchQuery_keepsLettersOfAnyScript() {
+        assertEquals("café* ünïcode*", FileRepository.toMatchQuery("Café Ünïcode"));
+    }
+
+    @Test
+    public void toMatchQuery_nothingSearchableIsNull() {
+        assertNull(FileRepository.toMatchQuery(null));
+        assertNull(FileRepository.toMatchQuery(""));
+        assertNull(FileRepository.toMatchQuery("   "));
+        assertNull(FileRepository.toMatchQuery("-*\"()"));
+    }
+}
@@ -0,0 +1,69 @@
+package com.andreas.personalcloudclient;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for SelectionModel's "these files" and "all except these" states.
+ */
+public class SelectionModelTest {
+
+    @Test
+    public void toggle_selectsAndDeselects() {
+        SelectionModel selection = SelectionModel.NONE.toggle("a").toggle("b");
+        assertTrue(selection.isSelected("a", "image"));
+        assertFalse(selection.isSelected("c", "image"));
+        assertEquals(2, selection.count(100));
+
+        selection = selection.toggle("a");
+        assertFalse(selection.isSelected("a", "image"));
+        assertEquals(1, selection.count(100));
+        // The original is unchanged.
+        assertTrue(SelectionModel.NONE.isEmpty(100));
+    }
+
+    @Test
+    public void all_countsEveryFileExceptTheToggledOnes() {
+        SelectionModel selection = SelectionModel.all(null).toggle("a").toggle("b");
+        assertTrue(selection.isAllExcept());
+        assertFalse(selection.isSelected("a", null));
+        assertTrue(selection.isSelected("z", null));
+        assertEquals(98, selection.count(100));
+        // Exceptions can outnumber a listing that shrank meanwhile.
+        assertEquals(0, selection.count(1));
+        assertTrue(selection.isEmpty(2));
+    }
+
+    @Test
+    public void invert_swapsSelectedAndUnselected() {
+        SelectionModel picked = SelectionModel.NONE.toggle("a").toggle("b");
+        SelectionModel inverted = picked.invert(null);
+        assertFalse(inverted.isSelected("a", "image"));
+        assertTrue(inverted.isSelected("c", "image"));
+        assertEquals(98, inverted.count(100));
+
+        SelectionModel back = inverted.invert(null);
+        assertTrue(back.isSelected("a", "image"));
+        assertEquals(2, back.count(100));
+        assertEquals(picked.getExceptions(), back.getExceptions());
+    }
+
+    @Test
+    public void all_ofTypeOnlySelectsThatType() {
+        SelectionModel images = SelectionModel.all("image").toggle("b.jpg");
+        assertTrue(images.isSelected("a.jpg", "image"));
+        assertFalse(images.isSelected("b.jpg", "image"));
+        assertFalse(images.isSelected("c.mp4", "video"));
+        // The total passed in is the size of the filtered view.
+        assertEquals(9, images.count(10));
+    }
+
+    @Test
+    public void invert_ofAllIsNothing() {
+        SelectionModel none = SelectionModel.all(null).invert(null);
+        assertFalse(none.isAllExcept());
+        assertTrue(none.isEmpty(100));
+        assertFalse(none.isSelected("a", null));
+    }
+}